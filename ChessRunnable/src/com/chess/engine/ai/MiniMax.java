@@ -1,8 +1,11 @@
 package ai;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import board.Board;
 import board.Move;
-import gui.Table.TilePanel;
+import board.PositionHistory;
 import player.MoveTransition;
 
 
@@ -20,11 +23,60 @@ public class MiniMax implements MoveStrategy {
 
 	private final BoardEvaluator boardEvaluator;
 	private final int searchDepth;
+	private final List<SearchListener> searchListeners;
+	private SearchStatistics.Builder statistics;
+	private SearchStatistics lastSearchStatistics;
+	private int iterationDepth;
+	private Move bestReply;
+	private Move ponderMove;
+	private volatile boolean stopRequested;
+	private PositionHistory positionHistory;
+	private long[] searchPath;
+	private boolean isRootInHistory;
 	
 	// CONSTRUCTOR 
 	public MiniMax(final int searchDepth) {
-		this.boardEvaluator = new StandardBoardEvaluator();
+		this(new StandardBoardEvaluator(), searchDepth);
+	}
+	
+	// Searches with another evaluation, for comparing evaluators against each other.
+	public MiniMax(final BoardEvaluator boardEvaluator, final int searchDepth) {
+		this.boardEvaluator = boardEvaluator;
 		this.searchDepth = searchDepth;
+		this.searchListeners = new ArrayList<>();
+	}
+	
+	@Override
+	public void addSearchListener(final SearchListener listener) {
+		this.searchListeners.add(listener);
+	}
+	
+	// The positions of the game so far, so that the search can tell when a line
+	// repeats a position played earlier. The history must not change while a
+	// search runs; hand over a copy when the game goes on in another thread.
+	public void setPositionHistory(final PositionHistory positionHistory) {
+		this.positionHistory = positionHistory;
+	}
+	
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		return this.lastSearchStatistics;
+	}
+	
+	// The opponent's reply the engine expects after its best move, or null when
+	// the search did not look deep enough to have one.
+	@Override
+	public Move getPonderMove() {
+		return this.ponderMove;
+	}
+	
+	// Asks a running search to stop. The search notices it at the next node and
+	// execute returns the best move found so far. A stop that comes before the
+	// search has started ends it as soon as it starts, so a timer that fires early
+	// is not lost. Interrupting the thread that runs the search has the same effect.
+	@Override
+	public void stop() {
+		this.stopRequested = true;
 	}
 	
 	@Override
@@ -41,6 +93,10 @@ public class MiniMax implements MoveStrategy {
 	 *  which call each other and evaluate the board by calling
 	 *  the evaluate function in the BoardEvaluator class which then
 	 *  calls the evulate function in the StandardBoardEvaluator class. 
+	 *  
+	 *  The search deepens one ply at a time up to the search depth, trying
+	 *  the best move of the previous iteration first, so that a search that
+	 *  is stopped early still has a sound move to return.
 	 * 
 	 *  https://en.wikipedia.org/wiki/Minimax
 	 * 
@@ -49,61 +105,141 @@ public class MiniMax implements MoveStrategy {
 	@Override
 	public Move execute(Board board) {
 		
-		final long startTime = System.currentTimeMillis();
+		this.statistics = new SearchStatistics.Builder();
+		this.ponderMove = null;
+		this.searchPath = new long[this.searchDepth + 1];
+		this.searchPath[0] = board.getZobristHash();
+		this.isRootInHistory = this.positionHistory != null && this.positionHistory.getCurrentBoard() == board;
 		Move bestMove = null;
+		int completedDepth = 0;
+		
+		for(int depth = 1; depth <= this.searchDepth && !isStopped(); depth++) {
+			
+			final SearchIterationEvent iterationEvent = new SearchIterationEvent();
+			iterationEvent.begin();
+			this.statistics.startIteration();
+			final RootSearchResult result = searchRoot(board, depth, bestMove);
+			
+			// A partial iteration searched the previous best move first, so its
+			// best move is at least as well informed as the previous one.
+			if(result.bestMove != null) {
+				bestMove = result.bestMove;
+				this.ponderMove = result.bestReply;
+			}
+			if(!result.isComplete) {
+				break;
+			}
+			
+			completedDepth = depth;
+			final SearchStatistics.Iteration iteration = this.statistics.completeIteration(depth, result.bestMove, result.bestValue);
+			if(iterationEvent.shouldCommit()) {
+				iterationEvent.depth = iteration.getDepth();
+				iterationEvent.nodes = iteration.getNodes();
+				iterationEvent.bestMove = String.valueOf(result.bestMove);
+				iterationEvent.score = result.bestValue;
+				iterationEvent.commit();
+			}
+			for(final SearchListener listener : this.searchListeners) {
+				listener.iterationCompleted(iteration);
+			}
+		}
 		
+		if(bestMove == null) {
+			bestMove = firstLegalMove(board);
+		}
+		
+		this.lastSearchStatistics = this.statistics.setSearchDepth(completedDepth).build();
+		for(final SearchListener listener : this.searchListeners) {
+			listener.searchCompleted(this.lastSearchStatistics);
+		}
+		
+		// The stop was for this search; the strategy can search again afterwards.
+		this.stopRequested = false;
+		return bestMove;
+	}
+	
+	// Searches every legal move of the current player to the given depth. The result
+	// is marked incomplete when the search was stopped before all moves were searched.
+	private RootSearchResult searchRoot(final Board board, final int depth, final Move previousBestMove) {
+		
+		this.iterationDepth = depth;
+		this.statistics.incrementNodes(0);
+		this.statistics.incrementInteriorNodes();
+		
+		Move bestMove = null;
+		Move bestMoveReply = null;
 		int highestSeenValue = Integer.MIN_VALUE;
 		int lowestSeenValue = Integer.MAX_VALUE;
 		int currentValue;
 		
-		System.out.println(board.currentPlayer() + " analyzing with depth " + searchDepth);
-		
-		int numMoves = board.currentPlayer().getLegalMoves().size();
-		
-		for(final Move move : board.currentPlayer().getLegalMoves()) {
+		for(final Move move : orderRootMoves(board, previousBestMove)) {
 			
 			final MoveTransition moveTransition = board.currentPlayer().makeMove(move);
 			if(moveTransition.getMoveStatus().isDone()) {
 				
+				final RootMoveEvent rootMoveEvent = new RootMoveEvent();
+				final long nodesBeforeMove = this.statistics.getNodes();
+				rootMoveEvent.begin();
+				this.bestReply = null;
+				
 				// If the current player is white, then get the lowest
 				// seen value, else get the largest seen value.
 				currentValue = board.currentPlayer().getAlliance().isWhite() ?
-						min(moveTransition.getToBoard(), searchDepth -1) :
-						max(moveTransition.getToBoard(), searchDepth -1);
+						min(moveTransition.getToBoard(), depth -1) :
+						max(moveTransition.getToBoard(), depth -1);
+				
+				// The value of a move whose search was cut short cannot be trusted.
+				if(isStopped()) {
+					return new RootSearchResult(bestMove, bestMoveReply, board.currentPlayer().getAlliance().isWhite() ? highestSeenValue : lowestSeenValue, false);
+				}
+				
+				if(rootMoveEvent.shouldCommit()) {
+					rootMoveEvent.move = move.toString();
+					rootMoveEvent.depth = depth;
+					rootMoveEvent.nodes = this.statistics.getNodes() - nodesBeforeMove;
+					rootMoveEvent.score = currentValue;
+					rootMoveEvent.commit();
+				}
 				
 				if(board.currentPlayer().getAlliance().isWhite() && currentValue >= highestSeenValue) {
 					highestSeenValue = currentValue;
 					bestMove = move;
+					bestMoveReply = this.bestReply;
 					
 				}
 				else if (board.currentPlayer().getAlliance().isBlack() && currentValue <= lowestSeenValue) {
 					lowestSeenValue = currentValue;
 					bestMove = move;
+					bestMoveReply = this.bestReply;
 				}
 			
 			}
 		}
-		
-		final long executionTime = System.currentTimeMillis() - startTime;
-		
-		
-		// SOUNDS 
-		if (bestMove.isAttack()) {
-			TilePanel.playSound("CapturedMove.wav");
-
-		}
-		else if(bestMove.isCastlingMove()) {
-			TilePanel.playSound("CastledMove.wav");
+		return new RootSearchResult(bestMove, bestMoveReply, board.currentPlayer().getAlliance().isWhite() ? highestSeenValue : lowestSeenValue, true);
+	}
+	
+	private static List<Move> orderRootMoves(final Board board, final Move previousBestMove) {
+		final List<Move> orderedMoves = new ArrayList<>(board.currentPlayer().getLegalMoves());
+		if(previousBestMove != null && orderedMoves.remove(previousBestMove)) {
+			orderedMoves.add(0, previousBestMove);
 		}
-		else if(board.currentPlayer().isInCheck()) {
-			TilePanel.playSound("Check.wav");
+		return orderedMoves;
+	}
+	
+	private static Move firstLegalMove(final Board board) {
+		for(final Move move : board.currentPlayer().getLegalMoves()) {
+			if(board.currentPlayer().makeMove(move).getMoveStatus().isDone()) {
+				return move;
+			}
 		}
-		else {
-			TilePanel.playSound("MovedPieceSound.wav");
+		return null;
+	}
+	
+	private boolean isStopped() {
+		if(!this.stopRequested && Thread.currentThread().isInterrupted()) {
+			this.stopRequested = true;
 		}
-		return bestMove;
-		
-		
+		return this.stopRequested;
 	}
 	
 	/* 
@@ -117,23 +253,71 @@ public class MiniMax implements MoveStrategy {
 	
 	public int min(final Board board, final int depth) {
 		
+		this.statistics.incrementNodes(this.iterationDepth - depth);
+		if(isStopped() || isDraw(board, this.iterationDepth - depth)) {
+			return 0;
+		}
 		if(depth == 0 || isEndGameScenario(board)) {
 			return this.boardEvaluator.evaluate(board, depth);
 		}
 		
+		this.statistics.incrementInteriorNodes();
 		int lowestSeenValue = Integer.MAX_VALUE;
 		for(final Move move : board.currentPlayer().getLegalMoves()) {
 			final MoveTransition moveTransition = board.currentPlayer().makeMove(move);
 			if(moveTransition.getMoveStatus().isDone()) {
 				final int currentValue = max(moveTransition.getToBoard(),depth-1);
+				if(isStopped()) {
+					break;
+				}
 				if(currentValue <= lowestSeenValue) {
 					lowestSeenValue = currentValue;
+					recordReply(move, depth);
 				}
 			}
 		}
 		return lowestSeenValue;
 	}
 	
+	// Remembers the best answer to the root move being searched so the engine
+	// knows which reply to ponder on.
+	private void recordReply(final Move move, final int depth) {
+		if(this.iterationDepth - depth == 1) {
+			this.bestReply = move;
+		}
+	}
+	
+	/*
+	 * 
+	 *  A position is scored as a draw when the fifty move rule applies, when it
+	 *  already occurred earlier in the line being searched, or when it occurred
+	 *  twice in the game up to and including the root. Positions are compared by
+	 *  Zobrist hash, and only back to the last capture or pawn move, since no
+	 *  position before one of those can come back.
+	 * 
+	 */
+	
+	private boolean isDraw(final Board board, final int ply) {
+		if(board.isFiftyMoveRule() && !board.currentPlayer().isInCheckmate()) {
+			return true;
+		}
+		final long hash = board.getZobristHash();
+		this.searchPath[ply] = hash;
+		int gameRepetitions = this.positionHistory != null ? this.positionHistory.getRepetitionCount(board) : 0;
+		final int reversiblePlies = Math.min(ply, board.getHalfmoveClock());
+		for(int i = ply - 4; i >= ply - reversiblePlies; i -= 2) {
+			if(this.searchPath[i] == hash) {
+				if(i > 0) {
+					return true;
+				}
+				if(!this.isRootInHistory) {
+					gameRepetitions++;
+				}
+			}
+		}
+		return gameRepetitions >= 2;
+	}
+	
 	private boolean isEndGameScenario(Board board) {
 		
 		return board.currentPlayer().isInCheckmate() || 
@@ -141,17 +325,26 @@ public class MiniMax implements MoveStrategy {
 	}
 
 	public int max(final Board board, final int depth) {
+		this.statistics.incrementNodes(this.iterationDepth - depth);
+		if(isStopped() || isDraw(board, this.iterationDepth - depth)) {
+			return 0;
+		}
 		if(depth == 0 || isEndGameScenario(board)) {
 			return this.boardEvaluator.evaluate(board, depth);
 		}
 		
+		this.statistics.incrementInteriorNodes();
 		int highestSeenValue = Integer.MIN_VALUE;
 		for(final Move move : board.currentPlayer().getLegalMoves()) {
 			final MoveTransition moveTransition = board.currentPlayer().makeMove(move);
 			if(moveTransition.getMoveStatus().isDone()) {
 				final int currentValue = min(moveTransition.getToBoard(),depth-1);
+				if(isStopped()) {
+					break;
+				}
 				if(currentValue >= highestSeenValue) {
 					highestSeenValue = currentValue;
+					recordReply(move, depth);
 				}
 			}
 		}
@@ -159,5 +352,19 @@ public class MiniMax implements MoveStrategy {
 	}
 
 	
+	private static final class RootSearchResult {
+		
+		private final Move bestMove;
+		private final Move bestReply;
+		private final int bestValue;
+		private final boolean isComplete;
+		
+		RootSearchResult(final Move bestMove, final Move bestReply, final int bestValue, final boolean isComplete) {
+			this.bestMove = bestMove;
+			this.bestReply = bestReply;
+			this.bestValue = bestValue;
+			this.isComplete = isComplete;
+		}
+	}
 	
 }
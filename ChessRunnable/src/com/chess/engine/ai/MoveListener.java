@@ -0,0 +1,25 @@
+package ai;
+
+import board.Board;
+import board.Move;
+
+/*
+ *
+ *  A MoveListener is told about every move that reaches the game, whether the
+ *  engine or a player made it, and about every move that is taken back. Front
+ *  ends subscribe to it to react to moves, such as the GUI playing a sound, so
+ *  the search never has to know about them. Listeners are called on the thread
+ *  that applied the move.
+ *
+ */
+
+public interface MoveListener {
+
+	// The move has just been played and board is the position it led to.
+	void movePlayed(Move move, Board board);
+
+	// The move has just been taken back and board is the position before it.
+	default void moveUndone(Move move, Board board) {
+	}
+
+}
@@ -7,4 +7,14 @@ public interface MoveStrategy {
 
 	Move execute(Board board);
 	
+	SearchStatistics getSearchStatistics();
+	
+	Move getPonderMove();
+	
+	void stop();
+	
+	// Listeners are called on the thread running execute, after every completed
+	// iteration and once the search is over.
+	void addSearchListener(SearchListener listener);
+	
 }
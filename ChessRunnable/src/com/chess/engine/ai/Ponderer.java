@@ -0,0 +1,105 @@
+package ai;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import board.Board;
+import board.Move;
+import player.MoveTransition;
+
+/*
+ *
+ *  The Ponderer keeps the engine thinking while the opponent is on move. After
+ *  the engine plays, it searches the position that arises from the reply the
+ *  engine expects. If the opponent plays that reply, the ponder search is used
+ *  as the engine's answer, either straight away when it has finished or once
+ *  the search still in progress completes. Any other reply stops the search.
+ *
+ *  The engine has no transposition table, so nothing a ponder search learns
+ *  carries over to another search. Pondering only overlaps the engine's thinking
+ *  with the opponent's: a hit saves the time already spent, and a miss throws
+ *  the ponder search away.
+ *
+ */
+
+public final class Ponderer {
+
+	private final ExecutorService executor;
+	private Board ponderBoard;
+	private Move expectedReply;
+	private MoveStrategy strategy;
+	private Future<Move> ponderSearch;
+
+	// CONSTRUCTOR
+	public Ponderer() {
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "Ponderer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// Starts searching the position after the expected reply on the board the
+	// opponent is about to move from. A ponder search already running is stopped.
+	public synchronized void start(final Board board,
+								   final Move expectedReply,
+								   final MoveStrategy strategy) {
+		stop();
+		final MoveTransition transition = board.currentPlayer().makeMove(expectedReply);
+		if(!transition.getMoveStatus().isDone()) {
+			return;
+		}
+		final Board expectedBoard = transition.getToBoard();
+		this.ponderBoard = board;
+		this.expectedReply = expectedReply;
+		this.strategy = strategy;
+		this.ponderSearch = this.executor.submit(() -> strategy.execute(expectedBoard));
+	}
+
+	// Called with the move the opponent actually played. Returns the engine's answer
+	// found by the ponder search, waiting for it if it is still running, or null when
+	// the opponent played something else and the position has to be searched afresh.
+	public Move ponderHit(final Move reply) throws InterruptedException {
+		final Future<Move> search;
+		synchronized(this) {
+			if(this.ponderSearch == null || reply == null ||
+			   reply.getBoard() != this.ponderBoard || !reply.equals(this.expectedReply)) {
+				stop();
+				return null;
+			}
+			search = this.ponderSearch;
+			this.ponderSearch = null;
+		}
+		try {
+			return search.get();
+		}
+		catch(final InterruptedException e) {
+			this.strategy.stop();
+			search.cancel(true);
+			throw e;
+		}
+		catch(final ExecutionException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	// The strategy of the last ponder search, which can be asked for its statistics
+	// and its own ponder move after a ponder hit.
+	public synchronized MoveStrategy getStrategy() {
+		return this.strategy;
+	}
+
+	public synchronized void stop() {
+		if(this.ponderSearch != null) {
+			this.strategy.stop();
+			this.ponderSearch.cancel(true);
+			this.ponderSearch = null;
+		}
+		this.ponderBoard = null;
+		this.expectedReply = null;
+	}
+
+}
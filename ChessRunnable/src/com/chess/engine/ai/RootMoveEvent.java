@@ -0,0 +1,34 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ *
+ *  Flight Recorder event covering the search of a single root move.
+ *
+ */
+
+@Name("chess.RootMove")
+@Label("Root Move")
+@Category({"Chess Engine", "Search"})
+@Description("Search of one legal move at the root of the tree")
+@StackTrace(false)
+class RootMoveEvent extends jdk.jfr.Event {
+
+	@Label("Move")
+	String move;
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Score")
+	int score;
+
+}
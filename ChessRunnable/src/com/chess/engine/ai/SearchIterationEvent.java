@@ -0,0 +1,36 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ *
+ *  Flight Recorder event covering one iteration of the search. Like all the
+ *  engine's events it costs next to nothing unless a recording with the
+ *  event enabled is running, e.g. -XX:StartFlightRecording or jcmd JFR.start.
+ *
+ */
+
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess Engine", "Search"})
+@Description("One fixed-depth pass of the engine's search")
+@StackTrace(false)
+class SearchIterationEvent extends jdk.jfr.Event {
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Best Move")
+	String bestMove;
+
+	@Label("Score")
+	int score;
+
+}
@@ -0,0 +1,18 @@
+package ai;
+
+/*
+ *
+ *  A SearchListener is told about the progress of a search. It is called on
+ *  the thread running the search, so listeners that touch Swing components
+ *  have to hand the work over to the event dispatch thread themselves.
+ *
+ */
+
+public interface SearchListener {
+
+	default void iterationCompleted(SearchStatistics.Iteration iteration) {
+	}
+
+	void searchCompleted(SearchStatistics statistics);
+
+}
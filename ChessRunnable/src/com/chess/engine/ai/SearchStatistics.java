@@ -0,0 +1,262 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import board.Move;
+
+/*
+ *
+ *  This class holds the statistics of a single search: how many nodes were
+ *  visited, how often the search was cut off, how the transposition table
+ *  performed and how long every iteration took. A new SearchStatistics is
+ *  built by the move strategy for every search and handed to its listeners.
+ *
+ */
+
+public final class SearchStatistics {
+
+	private final int searchDepth;
+	private final long nodes;
+	private final long quiescenceNodes;
+	private final long interiorNodes;
+	private final long betaCutoffs;
+	private final long firstMoveCutoffs;
+	private final long transpositionProbes;
+	private final long transpositionHits;
+	private final int maxSelectiveDepth;
+	private final long elapsedNanos;
+	private final List<Iteration> iterations;
+
+	// CONSTRUCTOR
+	private SearchStatistics(final Builder builder) {
+		this.searchDepth = builder.searchDepth;
+		this.nodes = builder.nodes;
+		this.quiescenceNodes = builder.quiescenceNodes;
+		this.interiorNodes = builder.interiorNodes;
+		this.betaCutoffs = builder.betaCutoffs;
+		this.firstMoveCutoffs = builder.firstMoveCutoffs;
+		this.transpositionProbes = builder.transpositionProbes;
+		this.transpositionHits = builder.transpositionHits;
+		this.maxSelectiveDepth = builder.maxSelectiveDepth;
+		this.elapsedNanos = builder.elapsedNanos;
+		this.iterations = Collections.unmodifiableList(new ArrayList<>(builder.iterations));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("depth %d seldepth %d nodes %d qnodes %d nps %d time %dms " +
+							 "cutoffs %.1f%% first-move cutoffs %.1f%% tt hits %.1f%%",
+							 this.searchDepth, this.maxSelectiveDepth, this.nodes, this.quiescenceNodes,
+							 getNodesPerSecond(), getElapsedMillis(), getBetaCutoffRate() * 100,
+							 getFirstMoveCutoffRate() * 100, getTranspositionHitRate() * 100);
+	}
+
+	// GETTERS /////////
+
+	public int getSearchDepth() {
+		return this.searchDepth;
+	}
+
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	public long getQuiescenceNodes() {
+		return this.quiescenceNodes;
+	}
+
+	public long getBetaCutoffs() {
+		return this.betaCutoffs;
+	}
+
+	public long getFirstMoveCutoffs() {
+		return this.firstMoveCutoffs;
+	}
+
+	public long getTranspositionProbes() {
+		return this.transpositionProbes;
+	}
+
+	public long getTranspositionHits() {
+		return this.transpositionHits;
+	}
+
+	public int getMaxSelectiveDepth() {
+		return this.maxSelectiveDepth;
+	}
+
+	public long getElapsedMillis() {
+		return this.elapsedNanos / 1_000_000;
+	}
+
+	public List<Iteration> getIterations() {
+		return this.iterations;
+	}
+
+	////////////////////////
+
+	public long getNodesPerSecond() {
+		return nodesPerSecond(this.nodes, this.elapsedNanos);
+	}
+
+	// Share of the nodes that were expanded and then cut off before all of their moves were searched.
+	public double getBetaCutoffRate() {
+		return ratio(this.betaCutoffs, this.interiorNodes);
+	}
+
+	// Share of the cutoffs that happened on the first move searched, which tells how good move ordering is.
+	public double getFirstMoveCutoffRate() {
+		return ratio(this.firstMoveCutoffs, this.betaCutoffs);
+	}
+
+	public double getTranspositionHitRate() {
+		return ratio(this.transpositionHits, this.transpositionProbes);
+	}
+
+	private static double ratio(final long numerator, final long denominator) {
+		return denominator == 0 ? 0.0 : (double) numerator / denominator;
+	}
+
+	private static long nodesPerSecond(final long nodes, final long elapsedNanos) {
+		return elapsedNanos == 0 ? 0 : (nodes * 1_000_000_000L) / elapsedNanos;
+	}
+
+
+	// An Iteration records one completed pass of the search to a fixed depth.
+	public static final class Iteration {
+
+		private final int depth;
+		private final long nodes;
+		private final long elapsedNanos;
+		private final Move bestMove;
+		private final int score;
+
+		Iteration(final int depth,
+				  final long nodes,
+				  final long elapsedNanos,
+				  final Move bestMove,
+				  final int score) {
+			this.depth = depth;
+			this.nodes = nodes;
+			this.elapsedNanos = elapsedNanos;
+			this.bestMove = bestMove;
+			this.score = score;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("depth %d nodes %d time %dms best %s score %d",
+								 this.depth, this.nodes, getElapsedMillis(), this.bestMove, this.score);
+		}
+
+		public int getDepth() {
+			return this.depth;
+		}
+
+		public long getNodes() {
+			return this.nodes;
+		}
+
+		public long getElapsedMillis() {
+			return this.elapsedNanos / 1_000_000;
+		}
+
+		public long getNodesPerSecond() {
+			return nodesPerSecond(this.nodes, this.elapsedNanos);
+		}
+
+		public Move getBestMove() {
+			return this.bestMove;
+		}
+
+		public int getScore() {
+			return this.score;
+		}
+	}
+
+
+	// The Builder is filled in by the search while it runs and is turned into an
+	// immutable SearchStatistics once the search is over.
+	public static class Builder {
+
+		private final long startNanos;
+		private int searchDepth;
+		private long nodes;
+		private long quiescenceNodes;
+		private long interiorNodes;
+		private long betaCutoffs;
+		private long firstMoveCutoffs;
+		private long transpositionProbes;
+		private long transpositionHits;
+		private int maxSelectiveDepth;
+		private long elapsedNanos;
+		private final List<Iteration> iterations;
+		private long iterationStartNanos;
+		private long iterationStartNodes;
+
+		public Builder() {
+			this.startNanos = System.nanoTime();
+			this.iterationStartNanos = this.startNanos;
+			this.iterations = new ArrayList<>();
+		}
+
+		public Builder setSearchDepth(final int searchDepth) {
+			this.searchDepth = searchDepth;
+			return this;
+		}
+
+		public void incrementNodes(final int ply) {
+			this.nodes++;
+			if(ply > this.maxSelectiveDepth) {
+				this.maxSelectiveDepth = ply;
+			}
+		}
+
+		public void incrementQuiescenceNodes(final int ply) {
+			this.quiescenceNodes++;
+			incrementNodes(ply);
+		}
+
+		public void incrementInteriorNodes() {
+			this.interiorNodes++;
+		}
+
+		public void incrementBetaCutoffs(final boolean onFirstMove) {
+			this.betaCutoffs++;
+			if(onFirstMove) {
+				this.firstMoveCutoffs++;
+			}
+		}
+
+		public void incrementTranspositionProbes(final boolean hit) {
+			this.transpositionProbes++;
+			if(hit) {
+				this.transpositionHits++;
+			}
+		}
+
+		public long getNodes() {
+			return this.nodes;
+		}
+
+		public void startIteration() {
+			this.iterationStartNanos = System.nanoTime();
+			this.iterationStartNodes = this.nodes;
+		}
+
+		public Iteration completeIteration(final int depth, final Move bestMove, final int score) {
+			final Iteration iteration = new Iteration(depth, this.nodes - this.iterationStartNodes,
+													  System.nanoTime() - this.iterationStartNanos, bestMove, score);
+			this.iterations.add(iteration);
+			return iteration;
+		}
+
+		public SearchStatistics build() {
+			this.elapsedNanos = System.nanoTime() - this.startNanos;
+			return new SearchStatistics(this);
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import ai.MiniMax;
+import ai.MoveStrategy;
+import ai.SearchListener;
+import ai.SearchStatistics;
+import board.Board;
+import board.Move;
+import pgn.EPDPosition;
+import pgn.FenUtilities;
+import pgn.PGNUtilities;
+import pgn.SANUtilities;
+
+/*
+ *
+ *  EPDTestSuite runs a move strategy over the positions of an EPD test suite
+ *  and counts how many it solves. A position is solved when the move played is
+ *  one of its bm moves and none of its am moves. Every position gets a fresh
+ *  strategy, so positions can be searched side by side on a pool of threads,
+ *  each under the same depth and time limit.
+ *
+ *  The time to solve is when the search first settled on a solving move and
+ *  kept it for every later iteration. It is the number to watch when a change
+ *  to the search or the evaluation should find the same moves sooner.
+ *
+ *  Run it with:  java -cp <classpath> bench.EPDTestSuite <suite.epd> [depth <x>] [movetime <ms>] [threads <x>]
+ *
+ */
+
+public final class EPDTestSuite {
+
+	private static final int DEFAULT_SEARCH_DEPTH = 4;
+
+	private final List<EPDPosition> positions;
+	private final Supplier<MoveStrategy> strategyFactory;
+	private final long moveTimeMillis;
+	private final int threads;
+
+	// A negative moveTimeMillis lets every search run to the depth of its strategy.
+	public EPDTestSuite(final List<EPDPosition> positions,
+						final Supplier<MoveStrategy> strategyFactory,
+						final long moveTimeMillis,
+						final int threads) {
+		this.positions = positions;
+		this.strategyFactory = strategyFactory;
+		this.moveTimeMillis = moveTimeMillis;
+		this.threads = Math.max(1, threads);
+	}
+
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if(args.length == 0) {
+			System.err.println("Usage: bench.EPDTestSuite <suite.epd> [depth <x>] [movetime <ms>] [threads <x>]");
+			System.exit(1);
+		}
+		int depth = DEFAULT_SEARCH_DEPTH;
+		long moveTime = -1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for(int i = 1; i + 1 < args.length; i += 2) {
+			switch(args[i]) {
+				case "depth":
+					depth = Integer.parseInt(args[i + 1]);
+					break;
+				case "movetime":
+					moveTime = Long.parseLong(args[i + 1]);
+					break;
+				case "threads":
+					threads = Integer.parseInt(args[i + 1]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		final int searchDepth = depth;
+		final EPDTestSuite suite = new EPDTestSuite(loadEPDFile(new File(args[0])),
+				() -> new MiniMax(searchDepth), moveTime, threads);
+		System.out.println(String.format("%s: %d positions, depth %d, movetime %s, %d threads",
+				args[0], suite.positions.size(), depth, moveTime < 0 ? "none" : moveTime + "ms", suite.threads));
+		suite.run(System.out);
+	}
+
+	// Reads one position per line. Blank lines and lines starting with # are skipped.
+	public static List<EPDPosition> loadEPDFile(final File epdFile) throws IOException {
+		final List<EPDPosition> positions = new ArrayList<>();
+		try (final BufferedReader reader = Files.newBufferedReader(epdFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(!line.isEmpty() && !line.startsWith("#")) {
+					positions.add(FenUtilities.createPositionFromEPD(line));
+				}
+			}
+		}
+		return positions;
+	}
+
+	// Searches every position and prints a line for each, in the order of the suite,
+	// followed by the totals.
+	public List<Result> run(final PrintStream report) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+			final Thread thread = new Thread(runnable, "EPD Search");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "EPD Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final long startNanos = System.nanoTime();
+		final List<Result> results = new ArrayList<>(this.positions.size());
+		try {
+			final List<Future<Result>> searches = new ArrayList<>(this.positions.size());
+			for(int i = 0; i < this.positions.size(); i++) {
+				final int index = i;
+				searches.add(executor.submit(() -> solve(index, this.positions.get(index), timer)));
+			}
+			for(final Future<Result> search : searches) {
+				final Result result = search.get();
+				results.add(result);
+				report.println(result);
+			}
+		}
+		catch (final ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+			timer.shutdownNow();
+		}
+		report.println(summarize(results, System.nanoTime() - startNanos));
+		return results;
+	}
+
+	private Result solve(final int index,
+						 final EPDPosition position,
+						 final ScheduledExecutorService timer) {
+		final Board board = position.getBoard();
+		final List<Move> bestMoves = toMoves(board, position.getOperands("bm"));
+		final List<Move> avoidMoves = toMoves(board, position.getOperands("am"));
+		final MoveStrategy strategy = this.strategyFactory.get();
+		final long startNanos = System.nanoTime();
+		final long[] solveNanos = {-1};
+		strategy.addSearchListener(new SearchListener() {
+			@Override
+			public void iterationCompleted(final SearchStatistics.Iteration iteration) {
+				if(!isSolution(iteration.getBestMove(), bestMoves, avoidMoves)) {
+					solveNanos[0] = -1;
+				}
+				else if(solveNanos[0] < 0) {
+					solveNanos[0] = System.nanoTime() - startNanos;
+				}
+			}
+
+			@Override
+			public void searchCompleted(final SearchStatistics statistics) {
+			}
+		});
+		final ScheduledFuture<?> stopTimer = this.moveTimeMillis >= 0 ?
+				timer.schedule(strategy::stop, this.moveTimeMillis, TimeUnit.MILLISECONDS) : null;
+		final Move move = strategy.execute(board);
+		final long elapsedNanos = System.nanoTime() - startNanos;
+		if(stopTimer != null) {
+			stopTimer.cancel(false);
+		}
+		final boolean isSolved = isSolution(move, bestMoves, avoidMoves);
+		// A move found by an iteration that was cut short is only known once the search returns.
+		if(isSolved && solveNanos[0] < 0) {
+			solveNanos[0] = elapsedNanos;
+		}
+		final SearchStatistics statistics = strategy.getSearchStatistics();
+		return new Result(index, position, move != null ? SANUtilities.toSAN(move) : "(none)", isSolved,
+						  elapsedNanos, isSolved ? solveNanos[0] : -1,
+						  statistics != null ? statistics.getNodes() : 0,
+						  statistics != null ? statistics.getSearchDepth() : 0);
+	}
+
+	// A suite needs bm, am or both; a position with neither cannot be solved.
+	private static boolean isSolution(final Move move,
+									  final List<Move> bestMoves,
+									  final List<Move> avoidMoves) {
+		if(move == null || (bestMoves.isEmpty() && avoidMoves.isEmpty())) {
+			return false;
+		}
+		return (bestMoves.isEmpty() || bestMoves.contains(move)) && !avoidMoves.contains(move);
+	}
+
+	private static List<Move> toMoves(final Board board,
+									  final List<String> moveTexts) {
+		final List<Move> moves = new ArrayList<>(moveTexts.size());
+		for(final String moveText : moveTexts) {
+			final Move move = PGNUtilities.createMove(board, moveText);
+			if(move == Move.MoveFactory.getNullMove()) {
+				throw new RuntimeException("Illegal move " + moveText + " in " + FenUtilities.parseFENfromGame(board));
+			}
+			moves.add(move);
+		}
+		return moves;
+	}
+
+	private static String summarize(final List<Result> results,
+									final long elapsedNanos) {
+		int solved = 0;
+		long nodes = 0;
+		long solveNanos = 0;
+		for(final Result result : results) {
+			nodes += result.nodes;
+			if(result.isSolved) {
+				solved++;
+				solveNanos += result.solveNanos;
+			}
+		}
+		final double seconds = Math.max(1, elapsedNanos) / 1e9;
+		return String.format("Solved %d of %d (%.1f%%) in %.1fs, %d nodes, %.0f nps, mean time to solve %dms",
+				solved, results.size(), results.isEmpty() ? 0.0 : 100.0 * solved / results.size(), seconds, nodes,
+				nodes / seconds, solved == 0 ? 0 : solveNanos / solved / 1_000_000);
+	}
+
+
+	// The outcome of one position of the suite.
+	public static final class Result {
+
+		private final int index;
+		private final EPDPosition position;
+		private final String move;
+		private final boolean isSolved;
+		private final long elapsedNanos;
+		private final long solveNanos;
+		private final long nodes;
+		private final int depth;
+
+		Result(final int index,
+			   final EPDPosition position,
+			   final String move,
+			   final boolean isSolved,
+			   final long elapsedNanos,
+			   final long solveNanos,
+			   final long nodes,
+			   final int depth) {
+			this.index = index;
+			this.position = position;
+			this.move = move;
+			this.isSolved = isSolved;
+			this.elapsedNanos = elapsedNanos;
+			this.solveNanos = solveNanos;
+			this.nodes = nodes;
+			this.depth = depth;
+		}
+
+		@Override
+		public String toString() {
+			final String id = this.position.getId() != null ? this.position.getId() : "#" + (this.index + 1);
+			final String expected = (this.position.hasOperation("bm") ? "bm " + String.join(" ", this.position.getOperands("bm")) : "") +
+									(this.position.hasOperation("am") ? " am " + String.join(" ", this.position.getOperands("am")) : "");
+			return String.format("%-12s %-20s played %-8s %-8s depth %d nodes %d time %dms%s",
+					id, expected.trim(), this.move, this.isSolved ? "solved" : "failed", this.depth, this.nodes,
+					getElapsedMillis(), this.isSolved ? " solved in " + getSolveMillis() + "ms" : "");
+		}
+
+		public EPDPosition getPosition() {
+			return this.position;
+		}
+
+		public String getMove() {
+			return this.move;
+		}
+
+		public boolean isSolved() {
+			return this.isSolved;
+		}
+
+		public long getElapsedMillis() {
+			return this.elapsedNanos / 1_000_000;
+		}
+
+		// How long the search took to settle on a solving move, or -1 when it never did.
+		public long getSolveMillis() {
+			return this.solveNanos < 0 ? -1 : this.solveNanos / 1_000_000;
+		}
+
+		public long getNodes() {
+			return this.nodes;
+		}
+
+		public int getDepth() {
+			return this.depth;
+		}
+	}
+
+}
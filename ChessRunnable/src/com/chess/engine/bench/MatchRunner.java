@@ -0,0 +1,500 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import ai.MiniMax;
+import ai.MoveStrategy;
+import board.Board;
+import board.Move;
+import board.PositionHistory;
+import pgn.EPDPosition;
+import pgn.FenUtilities;
+import pgn.PGNGameTags;
+import pgn.PGNWriter;
+import pgn.SANUtilities;
+import pieces.Piece;
+import player.MoveTransition;
+
+/*
+ *
+ *  MatchRunner plays two engine configurations against each other without the
+ *  Swing table. Every opening of the suite is played twice, once with each
+ *  engine as white, and several games run at once. Games are adjudicated on
+ *  mate, stalemate, threefold repetition, the fifty move rule, insufficient
+ *  material, a time forfeit or an illegal move, and drawn once they reach
+ *  MAX_GAME_PLIES. Every finished game can be written to a PGN file.
+ *
+ *  The match stops at its game limit, or earlier once the SPRT decides whether
+ *  the first engine is elo1 rather than elo0 stronger than the second. Games
+ *  still being played at that point are abandoned and not counted.
+ *
+ *  A search to a fixed depth plays the same game every time from the same
+ *  position. Without a time control to vary the searches, every opening is
+ *  therefore played only once with each colour, and there is no SPRT. An SPRT
+ *  also needs at least two openings, since games that repeat one another would
+ *  count as independent evidence.
+ *
+ *  Run it with:  java -cp <classpath> bench.MatchRunner <depthA> <depthB> [openings <file.epd>] [games <x>]
+ *                [concurrency <x>] [tc <seconds>+<increment>] [pgn <file>] [elo0 <x>] [elo1 <x>] [alpha <x>] [beta <x>]
+ *
+ */
+
+public final class MatchRunner {
+
+	private static final int MAX_GAME_PLIES = 400;
+	private static final int DEFAULT_GAMES = 1000;
+	private static final int MOVES_TO_GO = 30;
+	private static final long MOVE_OVERHEAD_MILLIS = 50;
+	private static final String STARTPOS_FEN = FenUtilities.parseFENfromGame(Board.createStandardBoard());
+
+	private final Engine engine;
+	private final Engine opponent;
+	private final List<Board> openings;
+	private final TimeControl timeControl;
+	private final int maxGames;
+	private final int concurrency;
+	private final SPRT sprt;
+	private final PGNWriter pgnWriter;
+	private final AtomicInteger nextGame;
+	private final String date;
+	private volatile boolean isFinished;
+	private int wins;
+	private int draws;
+	private int losses;
+	private SPRT.Decision decision;
+
+	// The results are counted from the point of view of engine. A null timeControl
+	// lets every search run to the depth of its strategy, a null sprt plays up to
+	// maxGames games, and a null pgnWriter keeps the games out of a file.
+	public MatchRunner(final Engine engine,
+					   final Engine opponent,
+					   final List<Board> openings,
+					   final TimeControl timeControl,
+					   final int maxGames,
+					   final int concurrency,
+					   final SPRT sprt,
+					   final PGNWriter pgnWriter) {
+		if(sprt != null && timeControl == null) {
+			throw new IllegalArgumentException("An SPRT needs a time control, fixed depth games repeat each other");
+		}
+		if(sprt != null && openings.size() < 2) {
+			throw new IllegalArgumentException("An SPRT needs an opening suite of at least two positions");
+		}
+		this.engine = engine;
+		this.opponent = opponent;
+		this.openings = openings.isEmpty() ? Collections.singletonList(Board.createStandardBoard()) : openings;
+		this.timeControl = timeControl;
+		this.maxGames = timeControl != null ? maxGames : Math.min(maxGames, 2 * this.openings.size());
+		this.concurrency = Math.max(1, concurrency);
+		this.sprt = sprt;
+		this.pgnWriter = pgnWriter;
+		this.nextGame = new AtomicInteger();
+		this.date = new SimpleDateFormat("yyyy.MM.dd").format(new Date());
+		this.decision = SPRT.Decision.CONTINUE;
+	}
+
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if(args.length < 2) {
+			System.err.println("Usage: bench.MatchRunner <depthA> <depthB> [openings <file.epd>] [games <x>] [concurrency <x>] " +
+							   "[tc <seconds>+<increment>] [pgn <file>] [elo0 <x>] [elo1 <x>] [alpha <x>] [beta <x>]");
+			System.exit(1);
+		}
+		final int depth = Integer.parseInt(args[0]);
+		final int opponentDepth = Integer.parseInt(args[1]);
+		List<Board> openings = Collections.emptyList();
+		int games = DEFAULT_GAMES;
+		int concurrency = Runtime.getRuntime().availableProcessors();
+		TimeControl timeControl = null;
+		File pgnFile = null;
+		double elo0 = 0;
+		double elo1 = 5;
+		double alpha = 0.05;
+		double beta = 0.05;
+		for(int i = 2; i + 1 < args.length; i += 2) {
+			switch(args[i]) {
+				case "openings":
+					openings = new ArrayList<>();
+					for(final EPDPosition position : EPDTestSuite.loadEPDFile(new File(args[i + 1]))) {
+						openings.add(position.getBoard());
+					}
+					break;
+				case "games":
+					games = Integer.parseInt(args[i + 1]);
+					break;
+				case "concurrency":
+					concurrency = Integer.parseInt(args[i + 1]);
+					break;
+				case "tc":
+					timeControl = TimeControl.parse(args[i + 1]);
+					break;
+				case "pgn":
+					pgnFile = new File(args[i + 1]);
+					break;
+				case "elo0":
+					elo0 = Double.parseDouble(args[i + 1]);
+					break;
+				case "elo1":
+					elo1 = Double.parseDouble(args[i + 1]);
+					break;
+				case "alpha":
+					alpha = Double.parseDouble(args[i + 1]);
+					break;
+				case "beta":
+					beta = Double.parseDouble(args[i + 1]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if(timeControl == null) {
+			System.out.println("No time control: every opening is played once with each colour, without an SPRT");
+		}
+		else if(openings.size() < 2) {
+			System.out.println("No SPRT without an opening suite of at least two positions");
+		}
+		final SPRT sprt = timeControl != null && openings.size() >= 2 ? new SPRT(elo0, elo1, alpha, beta) : null;
+		try (final PGNWriter pgnWriter = pgnFile != null ? new PGNWriter(pgnFile) : null) {
+			final MatchRunner match = new MatchRunner(Engine.miniMax(depth), Engine.miniMax(opponentDepth), openings,
+					timeControl, games, concurrency, sprt, pgnWriter);
+			match.run(System.out);
+		}
+	}
+
+	// Plays the match and prints a line for every finished game, followed by the result.
+	public void run(final PrintStream report) throws InterruptedException {
+		report.println(String.format("%s vs %s: %d openings, up to %d games, %d at once, tc %s%s",
+				this.engine, this.opponent, this.openings.size(), this.maxGames, this.concurrency,
+				this.timeControl != null ? this.timeControl : "none", this.sprt != null ? ", " + this.sprt : ""));
+		final ExecutorService executor = Executors.newFixedThreadPool(this.concurrency, runnable -> {
+			final Thread thread = new Thread(runnable, "Match Game");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "Match Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final List<Future<?>> workers = new ArrayList<>();
+			for(int i = 0; i < this.concurrency; i++) {
+				workers.add(executor.submit(() -> playGames(report, timer)));
+			}
+			for(final Future<?> worker : workers) {
+				worker.get();
+			}
+		}
+		catch (final ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+			timer.shutdownNow();
+		}
+		report.println(summarize());
+	}
+
+	public synchronized int getWins() {
+		return this.wins;
+	}
+
+	public synchronized int getDraws() {
+		return this.draws;
+	}
+
+	public synchronized int getLosses() {
+		return this.losses;
+	}
+
+	public synchronized SPRT.Decision getDecision() {
+		return this.decision;
+	}
+
+	private void playGames(final PrintStream report,
+						   final ScheduledExecutorService timer) {
+		int gameNumber;
+		while(!this.isFinished && (gameNumber = this.nextGame.getAndIncrement()) < this.maxGames) {
+			final GameRecord game = playGame(gameNumber, timer);
+			if(game != null) {
+				record(game, report);
+			}
+		}
+	}
+
+	// Plays one game, or returns null when the match finished while it was being played.
+	private GameRecord playGame(final int gameNumber,
+								final ScheduledExecutorService timer) {
+		final Board opening = this.openings.get((gameNumber / 2) % this.openings.size());
+		final boolean engineIsWhite = gameNumber % 2 == 0;
+		final Engine white = engineIsWhite ? this.engine : this.opponent;
+		final Engine black = engineIsWhite ? this.opponent : this.engine;
+		final PositionHistory history = new PositionHistory(opening);
+		final List<String> moves = new ArrayList<>();
+		final long[] clocks = new long[2];
+		if(this.timeControl != null) {
+			clocks[0] = clocks[1] = this.timeControl.baseMillis;
+		}
+		Board board = opening;
+		while(true) {
+			final String termination = adjudicate(board, history, moves.size());
+			if(termination != null) {
+				final String result = termination.equals("checkmate") ?
+						(board.currentPlayer().getAlliance().isWhite() ? "0-1" : "1-0") : "1/2-1/2";
+				return new GameRecord(gameNumber, opening, white, black, engineIsWhite, moves, result, termination);
+			}
+			if(this.isFinished) {
+				return null;
+			}
+			final boolean whiteToMove = board.currentPlayer().getAlliance().isWhite();
+			final int side = whiteToMove ? 0 : 1;
+			final MoveStrategy strategy = (whiteToMove ? white : black).strategyFactory.apply(history);
+			ScheduledFuture<?> stopTimer = null;
+			if(this.timeControl != null) {
+				final long moveTime = Math.max(1, Math.min(clocks[side] - MOVE_OVERHEAD_MILLIS,
+						clocks[side] / MOVES_TO_GO + this.timeControl.incrementMillis / 2));
+				stopTimer = timer.schedule(strategy::stop, moveTime, TimeUnit.MILLISECONDS);
+			}
+			final long startNanos = System.nanoTime();
+			final Move move = strategy.execute(board);
+			final long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+			if(stopTimer != null) {
+				stopTimer.cancel(false);
+			}
+			final String loss = whiteToMove ? "0-1" : "1-0";
+			if(this.timeControl != null) {
+				clocks[side] -= elapsedMillis;
+				if(clocks[side] < 0) {
+					return new GameRecord(gameNumber, opening, white, black, engineIsWhite, moves, loss, "time forfeit");
+				}
+				clocks[side] += this.timeControl.incrementMillis;
+			}
+			final MoveTransition transition = move != null ? board.currentPlayer().makeMove(move) : null;
+			if(transition == null || !transition.getMoveStatus().isDone()) {
+				return new GameRecord(gameNumber, opening, white, black, engineIsWhite, moves, loss, "illegal move");
+			}
+			moves.add(SANUtilities.toSAN(move, transition.getToBoard()));
+			board = transition.getToBoard();
+			history.push(board);
+		}
+	}
+
+	// The reason the game is over in this position, or null while it goes on.
+	private static String adjudicate(final Board board,
+									 final PositionHistory history,
+									 final int plies) {
+		if(board.currentPlayer().isInCheckmate()) {
+			return "checkmate";
+		}
+		if(board.currentPlayer().isInStalemate()) {
+			return "stalemate";
+		}
+		if(history.isThreefoldRepetition()) {
+			return "threefold repetition";
+		}
+		if(board.isFiftyMoveRule()) {
+			return "fifty move rule";
+		}
+		if(isInsufficientMaterial(board)) {
+			return "insufficient material";
+		}
+		if(plies >= MAX_GAME_PLIES) {
+			return "adjudication";
+		}
+		return null;
+	}
+
+	// Neither side can mate with a lone king, or with a king and a single knight or bishop.
+	private static boolean isInsufficientMaterial(final Board board) {
+		int minorPieces = 0;
+		for(final Piece piece : board.getAllPieces()) {
+			final Piece.PieceType pieceType = piece.getPieceType();
+			if(pieceType.isKing()) {
+				continue;
+			}
+			if(pieceType != Piece.PieceType.KNIGHT && pieceType != Piece.PieceType.BISHOP) {
+				return false;
+			}
+			minorPieces++;
+		}
+		return minorPieces <= 1;
+	}
+
+	private synchronized void record(final GameRecord game,
+									 final PrintStream report) {
+		if(this.decision != SPRT.Decision.CONTINUE) {
+			return;
+		}
+		final String engineWin = game.engineIsWhite ? "1-0" : "0-1";
+		if(game.result.equals("1/2-1/2")) {
+			this.draws++;
+		}
+		else if(game.result.equals(engineWin)) {
+			this.wins++;
+		}
+		else {
+			this.losses++;
+		}
+		if(this.pgnWriter != null) {
+			try {
+				this.pgnWriter.writeGame(game.createTags(this.date, this.timeControl), game.moves, game.result);
+				this.pgnWriter.flush();
+			}
+			catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		final StringBuilder line = new StringBuilder(String.format("Game %d: %s vs %s %s (%s), score +%d -%d =%d",
+				game.gameNumber + 1, game.white, game.black, game.result, game.termination,
+				this.wins, this.losses, this.draws));
+		if(this.sprt != null) {
+			line.append(String.format(", LLR %.2f", this.sprt.getLogLikelihoodRatio(this.wins, this.draws, this.losses)));
+			this.decision = this.sprt.test(this.wins, this.draws, this.losses);
+			if(this.decision != SPRT.Decision.CONTINUE) {
+				this.isFinished = true;
+			}
+		}
+		report.println(line);
+	}
+
+	private synchronized String summarize() {
+		final int games = this.wins + this.draws + this.losses;
+		final double[] elo = SPRT.estimateElo(this.wins, this.draws, this.losses);
+		final StringBuilder summary = new StringBuilder(String.format(
+				"Score of %s vs %s: %d - %d - %d [%.3f] %d games, Elo %.1f +/- %.1f",
+				this.engine, this.opponent, this.wins, this.losses, this.draws,
+				games == 0 ? 0.0 : (this.wins + this.draws / 2.0) / games, games, elo[0], elo[1]));
+		if(this.sprt != null) {
+			summary.append(String.format(", SPRT LLR %.2f [%.2f, %.2f] %s",
+					this.sprt.getLogLikelihoodRatio(this.wins, this.draws, this.losses),
+					this.sprt.getLowerBound(), this.sprt.getUpperBound(),
+					this.decision == SPRT.Decision.ACCEPT_H1 ? "H1 accepted" :
+					this.decision == SPRT.Decision.ACCEPT_H0 ? "H0 accepted" : "inconclusive"));
+		}
+		return summary.toString();
+	}
+
+
+	// An engine configuration: a name for the report and the PGN, and a factory that
+	// makes a fresh strategy for each move, given the positions of the game so far.
+	public static final class Engine {
+
+		private final String name;
+		private final Function<PositionHistory, MoveStrategy> strategyFactory;
+
+		public Engine(final String name,
+					  final Function<PositionHistory, MoveStrategy> strategyFactory) {
+			this.name = name;
+			this.strategyFactory = strategyFactory;
+		}
+
+		public static Engine miniMax(final int searchDepth) {
+			return new Engine("MiniMax depth " + searchDepth, history -> {
+				final MiniMax miniMax = new MiniMax(searchDepth);
+				miniMax.setPositionHistory(history);
+				return miniMax;
+			});
+		}
+
+		@Override
+		public String toString() {
+			return this.name;
+		}
+	}
+
+
+	// Base time and increment per move, written as in PGN and cutechess-cli: 60+0.5.
+	public static final class TimeControl {
+
+		private final long baseMillis;
+		private final long incrementMillis;
+
+		public TimeControl(final long baseMillis,
+						   final long incrementMillis) {
+			this.baseMillis = baseMillis;
+			this.incrementMillis = incrementMillis;
+		}
+
+		public static TimeControl parse(final String text) {
+			final int plus = text.indexOf('+');
+			final double base = Double.parseDouble(plus < 0 ? text : text.substring(0, plus));
+			final double increment = plus < 0 ? 0 : Double.parseDouble(text.substring(plus + 1));
+			return new TimeControl(Math.round(base * 1000), Math.round(increment * 1000));
+		}
+
+		@Override
+		public String toString() {
+			return formatSeconds(this.baseMillis) + "+" + formatSeconds(this.incrementMillis);
+		}
+
+		private static String formatSeconds(final long millis) {
+			return millis % 1000 == 0 ? String.valueOf(millis / 1000) : String.valueOf(millis / 1000.0);
+		}
+	}
+
+
+	private static final class GameRecord {
+
+		private final int gameNumber;
+		private final Board opening;
+		private final Engine white;
+		private final Engine black;
+		private final boolean engineIsWhite;
+		private final List<String> moves;
+		private final String result;
+		private final String termination;
+
+		GameRecord(final int gameNumber,
+				   final Board opening,
+				   final Engine white,
+				   final Engine black,
+				   final boolean engineIsWhite,
+				   final List<String> moves,
+				   final String result,
+				   final String termination) {
+			this.gameNumber = gameNumber;
+			this.opening = opening;
+			this.white = white;
+			this.black = black;
+			this.engineIsWhite = engineIsWhite;
+			this.moves = moves;
+			this.result = result;
+			this.termination = termination;
+		}
+
+		PGNGameTags createTags(final String date,
+							   final TimeControl timeControl) {
+			final PGNGameTags.TagsBuilder builder = new PGNGameTags.TagsBuilder()
+					.addTag("Event", "ChessEngineAI match")
+					.addTag("Date", date)
+					.addTag("Round", String.valueOf(this.gameNumber + 1))
+					.addTag("White", this.white.toString())
+					.addTag("Black", this.black.toString())
+					.addTag("Termination", this.termination)
+					.addTag("TimeControl", timeControl != null ? timeControl.toString() : "-")
+					.addTag("PlyCount", String.valueOf(this.moves.size()));
+			final String fen = FenUtilities.parseFENfromGame(this.opening);
+			if(!fen.equals(STARTPOS_FEN)) {
+				builder.addTag("SetUp", "1").addTag("FEN", fen);
+			}
+			return builder.build();
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package bench;
+
+/*
+ *
+ *  SPRT is a sequential probability ratio test between two hypotheses about
+ *  the Elo difference of an engine against another: H0 that it is elo0 and H1
+ *  that it is elo1. After every game the log likelihood ratio of the results
+ *  so far is compared with two bounds that follow from the accepted error
+ *  rates alpha and beta. Crossing the upper bound accepts H1, crossing the
+ *  lower bound accepts H0, and in between the match goes on. A clear
+ *  difference is settled after a few games, a small one takes many.
+ *
+ *  The ratio uses the normal approximation of the score of wins, draws and
+ *  losses, the same as Fishtest and cutechess-cli.
+ *
+ */
+
+public final class SPRT {
+
+	public enum Decision {
+		ACCEPT_H0,
+		ACCEPT_H1,
+		CONTINUE
+	}
+
+	private final double elo0;
+	private final double elo1;
+	private final double lowerBound;
+	private final double upperBound;
+
+	public SPRT(final double elo0,
+				final double elo1,
+				final double alpha,
+				final double beta) {
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		this.lowerBound = Math.log(beta / (1 - alpha));
+		this.upperBound = Math.log((1 - beta) / alpha);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SPRT elo0 %.1f elo1 %.1f bounds [%.2f, %.2f]", this.elo0, this.elo1,
+							 this.lowerBound, this.upperBound);
+	}
+
+	public double getLowerBound() {
+		return this.lowerBound;
+	}
+
+	public double getUpperBound() {
+		return this.upperBound;
+	}
+
+	public Decision test(final int wins,
+						 final int draws,
+						 final int losses) {
+		final double llr = getLogLikelihoodRatio(wins, draws, losses);
+		if(llr >= this.upperBound) {
+			return Decision.ACCEPT_H1;
+		}
+		if(llr <= this.lowerBound) {
+			return Decision.ACCEPT_H0;
+		}
+		return Decision.CONTINUE;
+	}
+
+	// Until every kind of result has occurred the variance of the score cannot be
+	// estimated, so half a game is added to each count, as Fishtest does.
+	public double getLogLikelihoodRatio(final int wins,
+										final int draws,
+										final int losses) {
+		if(wins + draws + losses == 0) {
+			return 0.0;
+		}
+		final double regularization = wins == 0 || draws == 0 || losses == 0 ? 0.5 : 0.0;
+		final double games = wins + draws + losses + 3 * regularization;
+		final double winRate = (wins + regularization) / games;
+		final double drawRate = (draws + regularization) / games;
+		final double score = winRate + drawRate / 2;
+		final double variance = (winRate + drawRate / 4 - score * score) / games;
+		if(variance <= 0) {
+			return 0.0;
+		}
+		final double score0 = expectedScore(this.elo0);
+		final double score1 = expectedScore(this.elo1);
+		return (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+	}
+
+	// The Elo difference a score stands for, with the half width of its 95%
+	// confidence interval. Both are infinite while one side has every point.
+	public static double[] estimateElo(final int wins,
+									   final int draws,
+									   final int losses) {
+		final double games = wins + draws + losses;
+		if(games == 0) {
+			return new double[] {0.0, Double.POSITIVE_INFINITY};
+		}
+		final double score = (wins + draws / 2.0) / games;
+		if(score <= 0 || score >= 1) {
+			return new double[] {toElo(score), Double.POSITIVE_INFINITY};
+		}
+		final double variance = ((wins + draws / 4.0) / games - score * score) / games;
+		final double margin = 1.96 * Math.sqrt(Math.max(0, variance));
+		final double elo = toElo(score);
+		final double upperElo = toElo(score + margin);
+		final double lowerElo = toElo(score - margin);
+		// Near a whole score one end of the interval runs off to infinity, so only the other end counts.
+		if(Double.isInfinite(upperElo) && Double.isInfinite(lowerElo)) {
+			return new double[] {elo, Double.POSITIVE_INFINITY};
+		}
+		if(Double.isInfinite(upperElo)) {
+			return new double[] {elo, elo - lowerElo};
+		}
+		if(Double.isInfinite(lowerElo)) {
+			return new double[] {elo, upperElo - elo};
+		}
+		return new double[] {elo, (upperElo - lowerElo) / 2};
+	}
+
+	private static double expectedScore(final double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	private static double toElo(final double score) {
+		if(score <= 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		if(score >= 1) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+}
@@ -4,9 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,6 +32,9 @@ public class Board {
 	private final Player currentPlayer;
 	
 	private final Pawn enPassantPawn;
+	private final long zobristHash;
+	private final int halfmoveClock;
+	private final int fullmoveNumber;
 
 	// CONSTRUCTOR
 	private Board(final Builder builder) {
@@ -42,6 +43,8 @@ public class Board {
 		this.blackPieces = calculateActivePieces(this.gameBoard, Alliance.BLACK);
 		
 		this.enPassantPawn = builder.enPassantPawn;
+		this.halfmoveClock = builder.halfmoveClock;
+		this.fullmoveNumber = builder.fullmoveNumber;
 		
 		final Collection<Move> whiteStandardLegalMoves = calculateLegalMoves(this.whitePieces);
 		final Collection<Move> blackStandardLegalMoves = calculateLegalMoves(this.blackPieces);
@@ -49,6 +52,7 @@ public class Board {
 		this.whitePlayer = new WhitePlayer(this, whiteStandardLegalMoves, blackStandardLegalMoves);
 		this.blackPlayer = new BlackPlayer(this, whiteStandardLegalMoves, blackStandardLegalMoves);
 		this.currentPlayer = builder.nextMoveMaker.choosePlayer(this.whitePlayer, this.blackPlayer);
+		this.zobristHash = Zobrist.hash(this);
 
 	}
 	
@@ -83,6 +87,21 @@ public class Board {
 		return this.enPassantPawn;
 	}
 	
+	// Equal positions have equal hashes; see Zobrist.
+	public long getZobristHash() {
+		return this.zobristHash;
+	}
+	
+	// The number of plies since the last capture or pawn move.
+	public int getHalfmoveClock() {
+		return this.halfmoveClock;
+	}
+	
+	// Starts at 1 and goes up after every black move.
+	public int getFullmoveNumber() {
+		return this.fullmoveNumber;
+	}
+	
 	public Collection<Piece> getBlackPieces() {
 		return this.blackPieces;
 	}
@@ -98,6 +117,11 @@ public class Board {
 
 	////////////////////////
 	
+	// Either player may claim a draw once fifty moves by each side have gone by
+	// without a capture or a pawn move.
+	public boolean isFiftyMoveRule() {
+		return this.halfmoveClock >= 100;
+	}
 	
 	private Collection<Move> calculateLegalMoves(final Collection<Piece> pieces) {
 		
@@ -134,7 +158,7 @@ public class Board {
 	private static List<Tile> createGameBoard(final Builder builder) {
 		final Tile[] tiles = new Tile[BoardUtils.NUM_TILES];
 		for(int i = 0; i < BoardUtils.NUM_TILES; i++) {
-			tiles[i] = Tile.createTile(i, builder.boardConfig.get(i));
+			tiles[i] = Tile.createTile(i, builder.boardConfig[i]);
 		}
 		
 		return Collections.unmodifiableList(Arrays.asList(tiles));
@@ -186,16 +210,20 @@ public class Board {
 	
 	public static class Builder {
 		
-		Map<Integer, Piece> boardConfig;
+		// Indexed by tile coordinate, so setting a piece boxes nothing and hashes nothing.
+		final Piece[] boardConfig;
 		Alliance nextMoveMaker;
 		Pawn enPassantPawn;
+		int halfmoveClock;
+		int fullmoveNumber;
 		
 		public Builder() {
-			this.boardConfig = new HashMap<>();
+			this.boardConfig = new Piece[BoardUtils.NUM_TILES];
+			this.fullmoveNumber = 1;
 		}
 		
 		public Builder setPiece(final Piece piece) {
-			this.boardConfig.put(piece.getPiecePosition(), piece);
+			this.boardConfig[piece.getPiecePosition()] = piece;
 			return this;
 		}
 		
@@ -211,6 +239,16 @@ public class Board {
 		public void setEnPassantPawn(Pawn enPassantPawn) {
 			this.enPassantPawn = enPassantPawn;
 		}
+		
+		public Builder setHalfmoveClock(final int halfmoveClock) {
+			this.halfmoveClock = halfmoveClock;
+			return this;
+		}
+		
+		public Builder setFullmoveNumber(final int fullmoveNumber) {
+			this.fullmoveNumber = fullmoveNumber;
+			return this;
+		}
 	}
 
 
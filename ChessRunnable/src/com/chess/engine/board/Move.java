@@ -119,6 +119,8 @@ public abstract class Move {
         final Board.Builder builder = new Builder();
         this.board.getAllPieces().forEach(builder::setPiece);
         builder.setMoveMaker(this.board.currentPlayer().getAlliance());
+        builder.setHalfmoveClock(this.board.getHalfmoveClock());
+        builder.setFullmoveNumber(this.board.getFullmoveNumber());
         return builder.build();
     }
 	
@@ -139,10 +141,20 @@ public abstract class Move {
 		
 		builder.setPiece(this.movedPiece.movePiece(this));
 		builder.setMoveMaker(this.board.currentPlayer().getOpponent().getAlliance());
+		setMoveClocks(builder);
 		
 		return builder.build();
 	}
 	
+	// The halfmove clock starts again after a pawn move or a capture, and the
+	// fullmove number goes up once black has moved.
+	protected void setMoveClocks(final Builder builder) {
+		final boolean resetsClock = this.movedPiece.getPieceType().isPawn() || isAttack();
+		builder.setHalfmoveClock(resetsClock ? 0 : this.board.getHalfmoveClock() + 1);
+		builder.setFullmoveNumber(this.board.getFullmoveNumber() +
+								  (this.board.currentPlayer().getAlliance().isBlack() ? 1 : 0));
+	}
+	
 	
 	public static class MajorAttackMove extends AttackMove {
 		
@@ -306,6 +318,7 @@ public abstract class Move {
 			
 			builder.setPiece(this.movedPiece.movePiece(this));
 			builder.setMoveMaker(this.board.currentPlayer().getOpponent().getAlliance());
+			setMoveClocks(builder);
 			return builder.build();
 			
 		}
@@ -349,6 +362,7 @@ public abstract class Move {
 			}
 			builder.setPiece(this.promotedPawn.getPromotionPiece().movePiece(this));
 			builder.setMoveMaker(pawnMovedBoard.currentPlayer().getAlliance());
+			setMoveClocks(builder);
 			return builder.build();
 			
 		}
@@ -396,6 +410,7 @@ public abstract class Move {
 			builder.setPiece(movedPawn);
 			builder.setEnPassantPawn(movedPawn);
 			builder.setMoveMaker(this.board.currentPlayer().getOpponent().getAlliance());
+			setMoveClocks(builder);
 			return builder.build();
 		}
 		
@@ -408,7 +423,7 @@ public abstract class Move {
 	
 	
 	
-	static abstract class CastleMove extends Move {
+	public static abstract class CastleMove extends Move {
 
 		protected final Rook castleRook;
 		protected final int castleRookStart;
@@ -454,6 +469,7 @@ public abstract class Move {
 			
 			builder.setPiece(new Rook(this.castleRook.getPieceAlliance(), this.castleRookDestination));
 			builder.setMoveMaker(this.board.currentPlayer().getOpponent().getAlliance());
+			setMoveClocks(builder);
 			
 			return builder.build();
 		}
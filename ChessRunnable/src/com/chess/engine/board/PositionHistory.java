@@ -0,0 +1,98 @@
+package board;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * 
+ *  PositionHistory keeps every board of a game, from the starting position up to
+ *  the current one. Boards are immutable, so going back to an earlier ply is a
+ *  lookup rather than a rebuild. It also counts how often each position has been
+ *  reached, by Zobrist hash, so repetitions are known without replaying the game.
+ * 
+ */
+
+public class PositionHistory {
+
+	private final List<Board> boards;
+	private final Map<Long, Integer> positionCounts;
+	
+	// CONSTRUCTOR
+	public PositionHistory(final Board startBoard) {
+		this.boards = new ArrayList<>();
+		this.positionCounts = new HashMap<>();
+		push(startBoard);
+	}
+	
+	// A copy that can be handed to a search on another thread while the game goes on.
+	public PositionHistory(final PositionHistory positionHistory) {
+		this.boards = new ArrayList<>(positionHistory.boards);
+		this.positionCounts = new HashMap<>(positionHistory.positionCounts);
+	}
+	
+	// Adds the board reached by the move just played.
+	public void push(final Board board) {
+		this.boards.add(board);
+		this.positionCounts.merge(board.getZobristHash(), 1, Integer::sum);
+	}
+	
+	// Takes back the last move and returns the board before it. The starting
+	// board is never removed.
+	public Board undo() {
+		if(this.boards.size() > 1) {
+			final Board board = this.boards.remove(this.boards.size() - 1);
+			this.positionCounts.computeIfPresent(board.getZobristHash(), (hash, count) -> count > 1 ? count - 1 : null);
+		}
+		return getCurrentBoard();
+	}
+	
+	// Takes back every move and returns the starting board.
+	public Board undoAll() {
+		reset(this.boards.get(0));
+		return getCurrentBoard();
+	}
+	
+	// Takes back the moves after the given ply and returns the board at that ply.
+	public Board jumpToPly(final int ply) {
+		while(getPly() > ply) {
+			undo();
+		}
+		return getCurrentBoard();
+	}
+	
+	// Starts over from a new starting board, for a new or loaded game.
+	public void reset(final Board startBoard) {
+		this.boards.clear();
+		this.positionCounts.clear();
+		push(startBoard);
+	}
+	
+	// GETTERS /////////
+	
+	public Board getCurrentBoard() {
+		return this.boards.get(this.boards.size() - 1);
+	}
+	
+	public Board getBoard(final int ply) {
+		return this.boards.get(ply);
+	}
+	
+	// The number of moves played since the starting board.
+	public int getPly() {
+		return this.boards.size() - 1;
+	}
+	
+	// How many times the position of the board has occurred in this game.
+	public int getRepetitionCount(final Board board) {
+		return this.positionCounts.getOrDefault(board.getZobristHash(), 0);
+	}
+	
+	////////////////////////
+	
+	public boolean isThreefoldRepetition() {
+		return getRepetitionCount(getCurrentBoard()) >= 3;
+	}
+	
+}
@@ -0,0 +1,120 @@
+package board;
+
+import java.util.Random;
+
+import ally.Alliance;
+import pieces.Pawn;
+import pieces.Piece;
+
+/*
+ * 
+ *  Zobrist hashing gives every position a 64 bit key by xoring a fixed random
+ *  number for each piece on its square, for the side to move, for every castling
+ *  right still held and for the file of a pawn that can be taken en passant.
+ *  Equal positions always get equal keys, so the keys can stand in for whole
+ *  boards when looking up or counting positions.
+ * 
+ *  https://www.chessprogramming.org/Zobrist_Hashing
+ * 
+ */
+
+public final class Zobrist {
+
+	// A fixed seed keeps the keys the same from one run to the next.
+	private static final long SEED = 0x5EED_C0DE_2023L;
+	
+	private static final long[][] PIECE_KEYS = new long[12][BoardUtils.NUM_TILES];
+	private static final long[] CASTLING_KEYS = new long[4];
+	private static final long[] EN_PASSANT_KEYS = new long[BoardUtils.NUM_TILES_PER_ROW];
+	private static final long WHITE_TO_MOVE_KEY;
+	
+	static {
+		final Random random = new Random(SEED);
+		for(final long[] keys : PIECE_KEYS) {
+			for(int i = 0; i < keys.length; i++) {
+				keys[i] = random.nextLong();
+			}
+		}
+		for(int i = 0; i < CASTLING_KEYS.length; i++) {
+			CASTLING_KEYS[i] = random.nextLong();
+		}
+		for(int i = 0; i < EN_PASSANT_KEYS.length; i++) {
+			EN_PASSANT_KEYS[i] = random.nextLong();
+		}
+		WHITE_TO_MOVE_KEY = random.nextLong();
+	}
+	
+	private Zobrist() {
+		throw new RuntimeException("Not instantiable");
+	}
+	
+	public static long hash(final Board board) {
+		long key = 0;
+		for(final Piece piece : board.getWhitePieces()) {
+			key ^= PIECE_KEYS[pieceIndex(piece)][piece.getPiecePosition()];
+		}
+		for(final Piece piece : board.getBlackPieces()) {
+			key ^= PIECE_KEYS[pieceIndex(piece)][piece.getPiecePosition()];
+		}
+		if(isCastleCapable(board, Alliance.WHITE, 63)) {
+			key ^= CASTLING_KEYS[0];
+		}
+		if(isCastleCapable(board, Alliance.WHITE, 56)) {
+			key ^= CASTLING_KEYS[1];
+		}
+		if(isCastleCapable(board, Alliance.BLACK, 7)) {
+			key ^= CASTLING_KEYS[2];
+		}
+		if(isCastleCapable(board, Alliance.BLACK, 0)) {
+			key ^= CASTLING_KEYS[3];
+		}
+		final int enPassantFile = getEnPassantFile(board);
+		if(enPassantFile >= 0) {
+			key ^= EN_PASSANT_KEYS[enPassantFile];
+		}
+		if(board.currentPlayer().getAlliance().isWhite()) {
+			key ^= WHITE_TO_MOVE_KEY;
+		}
+		return key;
+	}
+	
+	// White pieces take the even rows of the table and black pieces the odd ones.
+	private static int pieceIndex(final Piece piece) {
+		return piece.getPieceType().getAssignedNum() * 2 + (piece.getPieceAlliance().isWhite() ? 0 : 1);
+	}
+	
+	// A side may still castle towards a rook when neither its king nor that rook has moved.
+	public static boolean isCastleCapable(final Board board, final Alliance alliance, final int rookCoordinate) {
+		final int kingCoordinate = alliance.isWhite() ? 60 : 4;
+		final Tile kingTile = board.getTile(kingCoordinate);
+		final Tile rookTile = board.getTile(rookCoordinate);
+		return kingTile.isTileOccupied() && kingTile.getPiece().getPieceType().isKing() &&
+			   kingTile.getPiece().getPieceAlliance() == alliance && kingTile.getPiece().isFirstMove() &&
+			   rookTile.isTileOccupied() && rookTile.getPiece().getPieceType().isRook() &&
+			   rookTile.getPiece().getPieceAlliance() == alliance && rookTile.getPiece().isFirstMove();
+	}
+	
+	// The en passant file only counts when a pawn of the side to move stands next to
+	// the pawn that just jumped, since only then does it change the moves available.
+	// Returns -1 when there is no such file.
+	public static int getEnPassantFile(final Board board) {
+		final Pawn enPassantPawn = board.getEnPassantPawn();
+		if(enPassantPawn == null) {
+			return -1;
+		}
+		final int position = enPassantPawn.getPiecePosition();
+		final int file = position % BoardUtils.NUM_TILES_PER_ROW;
+		if((file > 0 && isCapturingPawn(board, position - 1)) ||
+		   (file < BoardUtils.NUM_TILES_PER_ROW - 1 && isCapturingPawn(board, position + 1))) {
+			return file;
+		}
+		return -1;
+	}
+	
+	private static boolean isCapturingPawn(final Board board, final int coordinate) {
+		final Tile tile = board.getTile(coordinate);
+		return tile.isTileOccupied() && tile.getPiece().getPieceType().isPawn() &&
+			   tile.getPiece().getPieceAlliance() == board.currentPlayer().getAlliance();
+	}
+	
+}
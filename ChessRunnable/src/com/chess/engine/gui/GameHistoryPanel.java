@@ -9,22 +9,26 @@ import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
+import ai.MoveListener;
 import board.Board;
 import board.Move;
 import gui.Table.MoveLog;
+import pgn.SANUtilities;
 
 /*
  * 
  *  GameHistoryPanel controls the right sidebar of the application
  *  that displays the notation of the game and each moves made by black
- *  and white.
+ *  and white. It listens to the moves played and taken back so that only
+ *  the last cell changes; redo rebuilds the whole table when a game starts.
  * 
  */
 
-class GameHistoryPanel extends JPanel {
+class GameHistoryPanel extends JPanel implements MoveListener {
 
     private final DataModel model;
     private final JScrollPane scrollPane;
+    private final List<String> moveTexts;
     private static final Dimension HISTORY_PANEL_DIMENSION = new Dimension(100, 40);
 
     
@@ -32,6 +36,7 @@ class GameHistoryPanel extends JPanel {
     GameHistoryPanel() {
         this.setLayout(new BorderLayout());
         this.model = new DataModel();
+        this.moveTexts = new ArrayList<>();
         
         final JTable table = new JTable(model);
         table.setRowHeight(15);
@@ -47,41 +52,58 @@ class GameHistoryPanel extends JPanel {
               final MoveLog moveHistory) {
         int currentRow = 0;
         this.model.clear();
-        for (final Move move : moveHistory.getMoves()) {
-            final String moveText = move.toString();
+        this.moveTexts.clear();
+        final List<String> moveTexts = SANUtilities.toSAN(moveHistory.getMoves());
+        this.moveTexts.addAll(moveTexts);
+        for (int i = 0; i < moveTexts.size(); i++) {
+            final Move move = moveHistory.getMoves().get(i);
             if (move.getMovedPiece().getPieceAlliance().isWhite()) {
-                this.model.setValueAt(moveText, currentRow, 0);
+                this.model.setValueAt(moveTexts.get(i), currentRow, 0);
             }
             else if (move.getMovedPiece().getPieceAlliance().isBlack()) {
-                this.model.setValueAt(moveText, currentRow, 1);
+                this.model.setValueAt(moveTexts.get(i), currentRow, 1);
                 currentRow++;
             }
         }
 
-        if(moveHistory.getMoves().size() > 0) {
-            final Move lastMove = moveHistory.getMoves().get(moveHistory.size() - 1);
-            final String moveText = lastMove.toString();
+        scrollToLastMove();
 
-            if (lastMove.getMovedPiece().getPieceAlliance().isWhite()) {
-                this.model.setValueAt(moveText + calculateCheckAndCheckMateHash(board), currentRow, 0);
-            }
-            else if (lastMove.getMovedPiece().getPieceAlliance().isBlack()) {
-                this.model.setValueAt(moveText + calculateCheckAndCheckMateHash(board), currentRow - 1, 1);
-            }
+    }
+
+    // Adds the move just played, in SAN with its check or mate sign, to the end of the table.
+    @Override
+    public void movePlayed(final Move move,
+                           final Board board) {
+        final String moveText = SANUtilities.toSAN(move, board);
+        this.moveTexts.add(moveText);
+        if (move.getMovedPiece().getPieceAlliance().isWhite()) {
+            this.model.appendWhiteMove(moveText);
+        }
+        else {
+            this.model.appendBlackMove(moveText);
         }
+        scrollToLastMove();
+    }
 
-        final JScrollBar vertical = scrollPane.getVerticalScrollBar();
-        vertical.setValue(vertical.getMaximum());
+    // Clears the cell of the move that was taken back.
+    @Override
+    public void moveUndone(final Move move,
+                           final Board board) {
+        if(!this.moveTexts.isEmpty()) {
+            this.moveTexts.remove(this.moveTexts.size() - 1);
+        }
+        this.model.removeLastMove();
+    }
 
+    // The moves of the game so far in SAN, as the book expects them, taken from the
+    // texts already worked out for the table instead of converting the game again.
+    String getGameText() {
+        return String.join(", ", this.moveTexts);
     }
 
-    private static String calculateCheckAndCheckMateHash(final Board board) {
-        if(board.currentPlayer().isInCheckmate()) {
-            return "#";
-        } else if(board.currentPlayer().isInCheck()) {
-            return "+";
-        }
-        return "";
+    private void scrollToLastMove() {
+        final JScrollBar vertical = scrollPane.getVerticalScrollBar();
+        vertical.setValue(vertical.getMaximum());
     }
 
     private static class Row {
@@ -124,6 +146,43 @@ class GameHistoryPanel extends JPanel {
             setRowCount(0);
         }
 
+        void appendWhiteMove(final String move) {
+            final Row row = new Row();
+            row.setWhiteMove(move);
+            this.values.add(row);
+            fireTableRowsInserted(this.values.size() - 1, this.values.size() - 1);
+        }
+
+        // A black move fills the last row, or opens a row of its own when the
+        // game started with black to move or the last row is already full.
+        void appendBlackMove(final String move) {
+            final int last = this.values.size() - 1;
+            if(last < 0 || this.values.get(last).getBlackMove() != null) {
+                final Row row = new Row();
+                row.setBlackMove(move);
+                this.values.add(row);
+                fireTableRowsInserted(last + 1, last + 1);
+            } else {
+                this.values.get(last).setBlackMove(move);
+                fireTableCellUpdated(last, 1);
+            }
+        }
+
+        void removeLastMove() {
+            final int last = this.values.size() - 1;
+            if(last < 0) {
+                return;
+            }
+            final Row row = this.values.get(last);
+            if(row.getBlackMove() != null && row.getWhiteMove() != null) {
+                row.setBlackMove(null);
+                fireTableCellUpdated(last, 1);
+            } else {
+                this.values.remove(last);
+                fireTableRowsDeleted(last, last);
+            }
+        }
+
         @Override
         public int getRowCount() {
             if(this.values == null) {
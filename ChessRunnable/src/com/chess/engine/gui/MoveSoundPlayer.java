@@ -0,0 +1,114 @@
+package gui;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+
+import ai.MoveListener;
+import board.Board;
+import board.Move;
+
+/*
+ *
+ *  MoveSoundPlayer listens to the moves played on the table and plays the
+ *  sound that matches each one: a capture, a castle, a check or a plain move.
+ *  The sounds are decoded once into a small pool of clips per sound, and the
+ *  clips are loaded and played from a single daemon thread, so a move costs
+ *  neither a new thread nor a read from disk.
+ *
+ */
+
+public class MoveSoundPlayer implements MoveListener {
+
+	private static final String[] SOUNDS = { "CapturedMove.wav", "CastledMove.wav", "Check.wav", "MovedPieceSound.wav" };
+	// Two clips per sound let a sound start again while the last one is still playing.
+	private static final int CLIPS_PER_SOUND = 2;
+
+	private final ExecutorService executor;
+	private final Map<String, Clip[]> clips;
+	private final Map<String, Integer> nextClip;
+
+	// CONSTRUCTOR
+	public MoveSoundPlayer() {
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "Move Sounds");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.clips = new HashMap<>();
+		this.nextClip = new HashMap<>();
+		this.executor.execute(this::loadClips);
+	}
+
+	@Override
+	public void movePlayed(final Move move, final Board board) {
+		if (move.isAttack()) {
+			playSound("CapturedMove.wav");
+		}
+		else if(move.isCastlingMove()) {
+			playSound("CastledMove.wav");
+		}
+		else if(board.currentPlayer().isInCheck()) {
+			playSound("Check.wav");
+		}
+		else {
+			playSound("MovedPieceSound.wav");
+		}
+	}
+
+	private void playSound(final String sound) {
+		this.executor.execute(() -> {
+			final Clip[] pool = this.clips.get(sound);
+			if(pool == null) {
+				return;
+			}
+			final int index = this.nextClip.get(sound);
+			this.nextClip.put(sound, (index + 1) % pool.length);
+			final Clip clip = pool[index];
+			clip.stop();
+			clip.setFramePosition(0);
+			clip.start();
+		});
+	}
+
+	// Runs on the sound thread before any sound is played. A sound that cannot be
+	// loaded, for example on a machine without an audio device, stays silent.
+	private void loadClips() {
+		for(final String sound : SOUNDS) {
+			final Clip[] pool = new Clip[CLIPS_PER_SOUND];
+			try {
+				for(int i = 0; i < pool.length; i++) {
+					pool[i] = openClip(sound);
+				}
+				this.clips.put(sound, pool);
+				this.nextClip.put(sound, 0);
+			}
+			catch (Exception e) {
+				System.err.println("Could not load sound " + sound + ": " + e.getMessage());
+				// The clips of the sound opened before the failure hold audio lines of their own.
+				for(final Clip clip : pool) {
+					if(clip != null) {
+						clip.close();
+					}
+				}
+			}
+		}
+	}
+
+	private static Clip openClip(final String sound) throws Exception {
+		try(final InputStream input = new BufferedInputStream(ResourceLoader.load("sounds/" + sound));
+			final AudioInputStream audio = AudioSystem.getAudioInputStream(input)) {
+			final Clip clip = AudioSystem.getClip();
+			clip.open(audio);
+			return clip;
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package gui;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+import ally.Alliance;
+import pieces.Piece;
+
+/*
+ *
+ *  PieceImages is the shared cache of the icons drawn on the board and in the
+ *  taken pieces panel. The piece sprite sheet and the move hint are read once,
+ *  and every icon is scaled the first time a (piece, alliance, size) asks for
+ *  it, so redrawing the board never touches the disk or scales an image again.
+ *
+ */
+
+final class PieceImages {
+
+	// chess.png holds the white pieces in its top row and the black pieces below,
+	// each piece on a 200 by 200 square in the order given by getAssignedNum.
+	private static final int SPRITE_SIZE = 200;
+	private static final int PIECES_PER_ROW = 6;
+
+	private static final Map<String, ImageIcon> ICONS = new ConcurrentHashMap<>();
+	private static BufferedImage spriteSheet;
+	private static BufferedImage moveHint;
+
+	private PieceImages() {
+		throw new RuntimeException("Not instantiable");
+	}
+
+	static ImageIcon getPieceIcon(final Piece piece, final int size) {
+		return getPieceIcon(piece.getPieceType(), piece.getPieceAlliance(), size);
+	}
+
+	static ImageIcon getPieceIcon(final Piece.PieceType pieceType, final Alliance alliance, final int size) {
+		return ICONS.computeIfAbsent(pieceType + "_" + alliance + "_" + size, key -> {
+			final int column = pieceType.getAssignedNum();
+			final int row = alliance.isBlack() ? 1 : 0;
+			final BufferedImage sprite = getSpriteSheet().getSubimage(column * SPRITE_SIZE, row * SPRITE_SIZE,
+																	  SPRITE_SIZE, SPRITE_SIZE);
+			return new ImageIcon(scale(sprite, size));
+		});
+	}
+
+	// The dot drawn on the empty squares a selected piece can move to.
+	static ImageIcon getMoveHintIcon(final int size) {
+		return ICONS.computeIfAbsent("MOVE_HINT_" + size, key -> new ImageIcon(scale(getMoveHint(), size)));
+	}
+
+	private static synchronized BufferedImage getSpriteSheet() {
+		if(spriteSheet == null) {
+			spriteSheet = read("img/chess.png");
+		}
+		return spriteSheet;
+	}
+
+	private static synchronized BufferedImage getMoveHint() {
+		if(moveHint == null) {
+			moveHint = read("img/potentialsLighter.png");
+		}
+		return moveHint;
+	}
+
+	private static BufferedImage read(final String path) {
+		try {
+			return ImageIO.read(ResourceLoader.load(path));
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Could not read image " + path, e);
+		}
+	}
+
+	// Scales with the same smooth filter the panels always used, once, and keeps
+	// the result as a BufferedImage that can be painted without further work.
+	private static BufferedImage scale(final BufferedImage image, final int size) {
+		final Image scaled = new ImageIcon(image.getScaledInstance(size, size, Image.SCALE_SMOOTH)).getImage();
+		final BufferedImage bufferedImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D graphics = bufferedImage.createGraphics();
+		graphics.drawImage(scaled, 0, 0, null);
+		graphics.dispose();
+		return bufferedImage;
+	}
+
+}
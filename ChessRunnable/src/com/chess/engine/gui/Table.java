@@ -7,33 +7,34 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.concurrent.ExecutionException;
 
-import javax.imageio.ImageIO;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.swing.*;
 import static pgn.PGNUtilities.persistPGNFile;
 
 
 import ai.MiniMax;
+import ai.MoveListener;
 import ai.MoveStrategy;
+import ai.Ponderer;
 import board.Board;
 import board.BoardUtils;
 import board.Move;
 import board.Move.MoveFactory;
+import board.PositionHistory;
 import board.Tile;
 import pgn.MySqlGamePersistence;
+import pgn.PGNPersistence;
+import pgn.PositionBook;
+import pgn.WriteThroughBook;
 import pieces.Piece;
 import player.MoveTransition;
 
@@ -42,8 +43,9 @@ import player.MoveTransition;
  *  Table is the main file for the GUI. Contains AI watcher which recognizes
  *  when its the AI's turn to move, JFrame(window for application), JPanel (board),
  *  and child JPanels (tiles). The table has a mouse action listener that senses when 
- *  the human clicks a tile and the second click for the destination tile. Includes sounds
- *  for when pieces move, attack, check, checkmate, and caste. 
+ *  the human clicks a tile and the second click for the destination tile. Every move
+ *  played is published to the move listeners, which play the sounds for when pieces
+ *  move, attack, check, checkmate, and caste. 
  * 
  */
 
@@ -60,18 +62,26 @@ public class Table extends Observable {
 	private final MoveLog moveLog;
 	private final GameSetup gameSetup;
 	private Board chessBoard;
+	private final PositionHistory positionHistory;
 	private Tile sourceTile;
 	private Tile destinationTile;
 	private Piece humanMovedPiece;
 	private BoardDirection boardDirection;
 	private boolean useBook;
+	private final PGNPersistence openingBook;
 	private Move computerMove;
+	private AIThinkTank thinkTank;
+	private final Ponderer ponderer;
+	private boolean usePondering;
+	private final List<MoveListener> moveListeners;
 	private boolean highlightLegalMoves;
 																	   //900  725 LAYERED
 	private final static Dimension OUTER_FRAME_DIMENSION = new Dimension(875, 725);
 																	   //500  500 LAYERED
 	private final static Dimension BOARD_PANEL_DIMENSION = new Dimension(500,500);
 	private final static Dimension TILE_PANEL_DIMENSION = new Dimension(10,10);
+	private final static int PIECE_ICON_SIZE = 82;
+	private final static int MOVE_HINT_ICON_SIZE = 40;
 	
 	
 	// Teal and white colors
@@ -94,7 +104,11 @@ public class Table extends Observable {
 		this.gameFrame.setSize(OUTER_FRAME_DIMENSION);
 		this.highlightLegalMoves = true;
 		this.useBook = true;
+		this.openingBook = createOpeningBook();
+		this.usePondering = true;
+		this.ponderer = new Ponderer();
 		this.chessBoard = Board.createStandardBoard();
+		this.positionHistory = new PositionHistory(this.chessBoard);
 		this.gameHistoryPanel = new GameHistoryPanel();
 		this.takenPiecesPanel = new TakenPiecesPanel();
 		this.gameSetup = new GameSetup(this.gameFrame, true);
@@ -102,6 +116,10 @@ public class Table extends Observable {
 		this.boardPanel.setBackground(Color.decode("0x312E2B"));
 		this.moveLog = new MoveLog();
 		this.addObserver(new TableGameAIWatcher());
+		this.moveListeners = new ArrayList<>();
+		this.addMoveListener(new MoveSoundPlayer());
+		this.addMoveListener(this.gameHistoryPanel);
+		this.addMoveListener(this.takenPiecesPanel);
 		this.boardDirection = BoardDirection.NORMAL;
 		this.gameFrame.add(this.takenPiecesPanel, BorderLayout.WEST);
 		
@@ -136,6 +154,10 @@ public class Table extends Observable {
         return this.useBook;
     }
 	
+	private Ponderer getPonderer() {
+		return this.ponderer;
+	}
+	
 	private GameSetup getGameSetup() {
 		return this.gameSetup;
 	}
@@ -147,6 +169,7 @@ public class Table extends Observable {
 	
 	public void show() {
 		Table.get().getMoveLog().clear();
+		Table.get().positionHistory.reset(Table.get().getGameBoard());
 		Table.get().getGameHistoryPanel().redo(chessBoard,  Table.get().getMoveLog());
 		Table.get().getTakenPiecesPanel().redo(Table.get().getMoveLog());
 		Table.get().getBoardPanel().drawBoard(Table.get().getGameBoard());
@@ -165,6 +188,10 @@ public class Table extends Observable {
 	
 	private class BoardPanel extends JPanel {
 		ArrayList<TilePanel> boardTiles;
+		private BoardDirection drawnDirection;
+		private Board selectionBoard;
+		private Piece selectedPiece;
+		private boolean[] legalDestinations;
 		
 		BoardPanel() {
 			super(new GridLayout(8, 8)); // 8 x 8 is the dimensions of chess board
@@ -175,6 +202,8 @@ public class Table extends Observable {
 				this.boardTiles.add(tilePanel);
 				add(tilePanel);
 			}
+			this.drawnDirection = BoardDirection.NORMAL;
+			this.legalDestinations = new boolean[BoardUtils.NUM_TILES];
 			
 			// Layered
 			//setOpaque(true);
@@ -184,14 +213,39 @@ public class Table extends Observable {
 			validate();
 		}
 		
+		// Tiles are only put back in order when the board was flipped. Each tile then
+		// compares itself with the new board and repaints only if it changed.
 		public void drawBoard(final Board board ) {
-			removeAll();
-			for(TilePanel tilePanel : boardDirection.traverse(boardTiles)) {
-				tilePanel.drawTile(board);
-				add(tilePanel);
+			if(this.drawnDirection != boardDirection) {
+				removeAll();
+				for(TilePanel tilePanel : boardDirection.traverse(boardTiles)) {
+					add(tilePanel);
+				}
+				this.drawnDirection = boardDirection;
+				validate();
+				repaint();
 			}
-			validate();
-			repaint();	
+			final boolean[] destinations = legalDestinations(board);
+			for(TilePanel tilePanel : boardTiles) {
+				tilePanel.drawTile(board, destinations[tilePanel.tileId]);
+			}
+		}
+		
+		// The squares the selected piece can move to, worked out once per selection
+		// rather than once for every tile drawn.
+		private boolean[] legalDestinations(final Board board) {
+			final Piece piece = highlightLegalMoves ? humanMovedPiece : null;
+			if(board != this.selectionBoard || piece != this.selectedPiece) {
+				this.selectionBoard = board;
+				this.selectedPiece = piece;
+				this.legalDestinations = new boolean[BoardUtils.NUM_TILES];
+				if(piece != null && piece.getPieceAlliance() == board.currentPlayer().getAlliance()) {
+					for(final Move move : piece.calculateLegalMoves(board)) {
+						this.legalDestinations[move.getDestinationCoordinate()] = true;
+					}
+				}
+			}
+			return this.legalDestinations;
 		}
 	}
 	
@@ -240,30 +294,15 @@ public class Table extends Observable {
 	// recognizing mouse clicks, and drawing piece icons on each tile.
 	public class TilePanel extends JPanel {
 		private final int tileId;
-		JLabel chessPiece;
-		public final static Image imgs[] = new Image[12];
+		private final JLabel iconLabel;
 		public TilePanel(final BoardPanel boardPanel, final int tileId) {
 			super(new GridBagLayout());
 			this.tileId = tileId;
-			
-			// Makes subimages out of the chess.png which contains 
-			// all piece images. Adds each individual piece to a Image array
-			try {
-				BufferedImage image = ImageIO.read(ResourceLoader.load("img/chess.png"));
-				int ind = 0;
-				for(int y = 0; y < 400; y += 200) {
-					for (int x = 0; x < 1200; x+=200) {		     // Piece icon sizes    v    v	
-						imgs[ind] = image.getSubimage(x, y, 200, 200).getScaledInstance(82, 82, BufferedImage.SCALE_SMOOTH);
-						ind++;
-					}
-				}
-			} catch (IOException e1) {	
-				e1.printStackTrace();
-			}
+			this.iconLabel = new JLabel();
+			add(this.iconLabel);
 			
 			setPreferredSize(TILE_PANEL_DIMENSION);
-			assignTileColor();       // Makes the tile colors dark and light squares
-			assignTilePieceIcon(chessBoard);  // Adds piece images to the JPanel tiles according to board
+			drawTile(chessBoard, false);  // Tile colors, dark and light squares, and the piece image according to board
 			addMouseListener(new MouseListener() {
 
 				@Override
@@ -293,21 +332,10 @@ public class Table extends Observable {
 							final MoveTransition transition = chessBoard.currentPlayer().makeMove(move);
 							if(transition.getMoveStatus().isDone()) {
 								chessBoard = transition.getToBoard();
+								positionHistory.push(chessBoard);
 								moveLog.addMove(move);
 								
-							    // SOUNDS
-								if (move.isAttack()) {
-									playSound("CapturedMove.wav");
-								}
-								else if(move.isCastlingMove()) {
-									playSound("CastledMove.wav");
-								}
-								else if(chessBoard.currentPlayer().isInCheck()) {
-									playSound("Check.wav");
-								}
-								else {
-									playSound("MovedPieceSound.wav");
-								}
+								firePlayedMove(move, chessBoard);
 							}
 							
 							// If move status is not done, it is illegal so 
@@ -326,8 +354,6 @@ public class Table extends Observable {
 						SwingUtilities.invokeLater(new Runnable() {
 							@Override
 							public void run() {
-								gameHistoryPanel.redo(chessBoard, moveLog);
-								takenPiecesPanel.redo(moveLog);
 								if(gameSetup.isAIPlayer(chessBoard.currentPlayer())) {
 									Table.get().moveMadeUpdate(PlayerType.HUMAN);
 								}
@@ -369,78 +395,42 @@ public class Table extends Observable {
 			validate();	
 		}
 		
-		public static Image[] getPieceImages() {
-			return imgs;
-		}
-		
-		// Getting audio from sounds
-		public static synchronized void playSound(final String url) {
-			 new Thread(new Runnable() { 
-			      public void run() {
-			        try {
-			          Clip clip = AudioSystem.getClip();												
-			          AudioInputStream inputStream = AudioSystem.getAudioInputStream(ResourceLoader.load("sounds/" + url));    
-			          clip.open(inputStream);
-			          clip.start(); 
-			        } 
-			        catch (Exception e) {
-			          System.err.println(e.getMessage());
-			        }
-			      }
-			 }).start();
-		}
-		
 		// Draw tile, including piece icon, tile colors, the highlight legal moves options.
-		public void drawTile(final Board board) {
-			assignTileColor();
-			assignTilePieceIcon(board);
-			highlightLegals(board);
-			validate();		
+		// Only what differs from the last drawing is changed, so a tile whose piece and
+		// color stay the same is neither laid out nor painted again.
+		public void drawTile(final Board board, final boolean isLegalDestination) {
+			assignTileColor(board, isLegalDestination);
+			assignTileIcon(board, isLegalDestination);
 		}
 		
-		public void assignTilePieceIcon(final Board board) {
-			this.removeAll();
-			if(board.getTile(this.tileId).isTileOccupied()) {
-				int assignedNum = board.getTile(tileId).getPiece().getPieceType().getAssignedNum();
-				if(board.getTile(this.tileId).getPiece().getPieceAlliance().isBlack()) {
-					assignedNum += 6;
-				}
-				add(new JLabel(new ImageIcon(imgs[assignedNum])));
+		// A tile shows its piece, or the move hint when a selected piece can move to it.
+		private void assignTileIcon(final Board board, final boolean isLegalDestination) {
+			final Tile tile = board.getTile(this.tileId);
+			final Icon icon;
+			if(tile.isTileOccupied()) {
+				icon = PieceImages.getPieceIcon(tile.getPiece(), PIECE_ICON_SIZE);
 			}
-		}
-		
-		private void highlightLegals(final Board board) {
-			if (highlightLegalMoves) {
-				for(final Move move : pieceLegalMoves(board)) {
-					if(move.getDestinationCoordinate() == this.tileId) {
-						try {
-							if (!chessBoard.getTile(move.getDestinationCoordinate()).isTileOccupied()) {
-								add(new JLabel(new ImageIcon(ImageIO.read(ResourceLoader.load("img/potentialsLighter.png")).getScaledInstance(40, 40, BufferedImage.SCALE_SMOOTH))));	
-							}
-							else {
-								setBackground(((tileId + tileId / 8) % 2 == 0) ? lighterWhiteActivePiece : lighterGreenActivePiece);
-							}
-						} catch(Exception e) {
-							e.printStackTrace();
-						}
-					}
-				}
+			else if(isLegalDestination) {
+				icon = PieceImages.getMoveHintIcon(MOVE_HINT_ICON_SIZE);
 			}
-		}
-		
-		private Collection<Move> pieceLegalMoves(final Board board) {
-			if(humanMovedPiece != null && humanMovedPiece.getPieceAlliance() == board.currentPlayer().getAlliance()) {
-				return humanMovedPiece.calculateLegalMoves(board);
+			else {
+				icon = null;
+			}
+			if(this.iconLabel.getIcon() != icon) {
+				this.iconLabel.setIcon(icon);
 			}
-			return Collections.emptyList();
 		}
 
-		private void assignTileColor() {
-			boolean isLight = ((tileId + tileId / 8) % 2 == 0);
-            setBackground(isLight ? lightTileColor : darkTileColor);
-            if(chessBoard.getTile(tileId).equals(sourceTile)) {
-            	 setBackground(isLight ? lighterWhiteActivePiece : lighterGreenActivePiece);
-            }
+		// The selected tile and the pieces it can capture are lit up.
+		private void assignTileColor(final Board board, final boolean isLegalDestination) {
+			final boolean isLight = ((tileId + tileId / 8) % 2 == 0);
+			final boolean isActive = (sourceTile != null && sourceTile.getTileCoordinate() == this.tileId) ||
+									 (isLegalDestination && board.getTile(this.tileId).isTileOccupied());
+			final Color color = isActive ? (isLight ? lighterWhiteActivePiece : lighterGreenActivePiece)
+										 : (isLight ? lightTileColor : darkTileColor);
+			if(!color.equals(getBackground())) {
+				setBackground(color);
+			}
 		}
 		
 	}
@@ -500,24 +490,75 @@ public class Table extends Observable {
                 "Use Book Moves", false);
         cbUseBookMoves.addActionListener(e -> useBook = cbUseBookMoves.isSelected());
         preferencesMenu.add(cbUseBookMoves);
+        final JCheckBoxMenuItem cbPonder = new JCheckBoxMenuItem("Ponder On Opponent's Time", true);
+        cbPonder.addActionListener(e -> {
+        	usePondering = cbPonder.isSelected();
+        	if(!usePondering) {
+        		ponderer.stop();
+        	}
+        });
+        preferencesMenu.add(cbPonder);
 		return preferencesMenu;
 	}
 	
+	// The MySQL game table stays the store of every game, and the book answers from
+	// memory. The book is read from the table in the background, and loaded PGN files
+	// are written through to the table. Without a database the book lives in memory only.
+	private static PGNPersistence createOpeningBook() {
+		final WriteThroughBook openingBook;
+		try {
+			openingBook = new WriteThroughBook(new PositionBook(), MySqlGamePersistence.get());
+		}
+		catch (final RuntimeException | ExceptionInInitializerError e) {
+			System.out.println("No MySQL game database, the opening book is kept in memory only: " + e);
+			return new PositionBook();
+		}
+		new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws IOException {
+				openingBook.loadBook();
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				try {
+					get();
+				}
+				catch (final InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+				}
+			}
+		}.execute();
+		return openingBook;
+	}
+
+	// Loading a large PGN file takes a while, so it runs in the background and the
+	// board stays usable. The book answers from the games read so far meanwhile.
 	private static void loadPGNFile(final File pgnFile) {
-        try {
-            persistPGNFile(pgnFile);
-            
-        }
-        catch (final IOException e) {
-            e.printStackTrace();
-        }
-    }
+		new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws IOException {
+				persistPGNFile(pgnFile, Table.get().openingBook);
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				try {
+					get();
+				}
+				catch (final InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+				}
+			}
+		}.execute();
+	}
 	
    private void undoAllMoves() {
-        for(int i = Table.get().getMoveLog().size() - 1; i >= 0; i--) {
-            final Move lastMove = Table.get().getMoveLog().removeMove(Table.get().getMoveLog().size() - 1);
-            this.chessBoard = this.chessBoard.currentPlayer().unMakeMove(lastMove).getToBoard();
-        }
+        cancelThinkTank();
+        this.ponderer.stop();
+        this.chessBoard = this.positionHistory.undoAll();
         this.computerMove = null;
         Table.get().getMoveLog().clear();
         Table.get().getGameHistoryPanel().redo(chessBoard, Table.get().getMoveLog());
@@ -526,12 +567,12 @@ public class Table extends Observable {
     }
    
     private void undoLastMove() {
+       cancelThinkTank();
+       this.ponderer.stop();
        final Move lastMove = Table.get().getMoveLog().removeMove(Table.get().getMoveLog().size() - 1);
-       this.chessBoard = this.chessBoard.currentPlayer().unMakeMove(lastMove).getToBoard();
+       this.chessBoard = this.positionHistory.undo();
        this.computerMove = null;
-       Table.get().getMoveLog().removeMove(lastMove);
-       Table.get().getGameHistoryPanel().redo(chessBoard, Table.get().getMoveLog());
-       Table.get().getTakenPiecesPanel().redo(Table.get().getMoveLog());
+       fireUndoneMove(lastMove, chessBoard);
        Table.get().getBoardPanel().drawBoard(chessBoard);
     }
 	
@@ -588,10 +629,12 @@ public class Table extends Observable {
 			
 			if(Table.get().getGameSetup().isAIPlayer((Table.get().getGameBoard().currentPlayer())) && 
 					!Table.get().getGameBoard().currentPlayer().isInCheckmate() &&
-					!Table.get().getGameBoard().currentPlayer().isInStalemate()) {
+					!Table.get().getGameBoard().currentPlayer().isInStalemate() &&
+					!Table.get().isDrawn()) {
 				
-				final AIThinkTank thinkTank = new AIThinkTank();
-				thinkTank.execute();
+				Table.get().cancelThinkTank();
+				Table.get().thinkTank = new AIThinkTank(Table.get().getGameBoard());
+				Table.get().thinkTank.execute();
 			}
 			
 			if(Table.get().getGameBoard().currentPlayer().isInCheckmate()) {
@@ -600,13 +643,35 @@ public class Table extends Observable {
 			if(Table.get().getGameBoard().currentPlayer().isInStalemate()) {
 				System.out.println("GAME OVER: " + Table.get().getGameBoard().currentPlayer() + " is in stalemate!");
 			}
+			if(Table.get().positionHistory.isThreefoldRepetition()) {
+				System.out.println("GAME OVER: draw by threefold repetition!");
+			}
+			else if(Table.get().getGameBoard().isFiftyMoveRule()) {
+				System.out.println("GAME OVER: draw by the fifty move rule!");
+			}
 			
 		}
 		
 	}
 	
+	// The computer claims a draw as soon as a position occurs for the third time
+	// or fifty moves go by without a capture or pawn move.
+	private boolean isDrawn() {
+		return this.positionHistory.isThreefoldRepetition() || this.chessBoard.isFiftyMoveRule();
+	}
+	
+	// Stops the computer from thinking about a position that is no longer on the board.
+	// The search is interrupted and its result is thrown away when it comes back.
+	private void cancelThinkTank() {
+		if(this.thinkTank != null) {
+			this.thinkTank.cancel(true);
+			this.thinkTank = null;
+		}
+	}
+	
 	public void updateGameBoard(final Board board) {
 		this.chessBoard = board;
+		this.positionHistory.push(board);
 	}
 	
 	public void updateComputerMove(final Move move) {
@@ -629,6 +694,24 @@ public class Table extends Observable {
 		return this.boardPanel;
 	}
 	
+	public void addMoveListener(final MoveListener listener) {
+		this.moveListeners.add(listener);
+	}
+	
+	// Tells the move listeners, such as the sound player and the side panels, about
+	// a move that has just been played on or taken back from the game board.
+	private void firePlayedMove(final Move move, final Board board) {
+		for(final MoveListener listener : this.moveListeners) {
+			listener.movePlayed(move, board);
+		}
+	}
+	
+	private void fireUndoneMove(final Move move, final Board board) {
+		for(final MoveListener listener : this.moveListeners) {
+			listener.moveUndone(move, board);
+		}
+	}
+	
 	@SuppressWarnings("deprecation")
 	private void moveMadeUpdate(final PlayerType playerType) {
 		setChanged();
@@ -637,8 +720,19 @@ public class Table extends Observable {
 	
 	private static class AIThinkTank extends SwingWorker<Move, String> {
 		
-		private AIThinkTank() {
-			
+		private final Board board;
+		private final Move lastMove;
+		private final String gameText;
+		private final PositionHistory positionHistory;
+		private MoveStrategy strategy;
+		
+		private AIThinkTank(final Board board) {
+			this.board = board;
+			this.positionHistory = new PositionHistory(Table.get().positionHistory);
+			final MoveLog moveLog = Table.get().getMoveLog();
+			this.lastMove = moveLog.size() > 0 ? moveLog.getMoves().get(moveLog.size() - 1) : null;
+			// Only the book reads the game text.
+			this.gameText = Table.get().getUseBook() ? Table.get().getGameHistoryPanel().getGameText() : "";
 		}
 
 		@Override
@@ -647,19 +741,31 @@ public class Table extends Observable {
 			//final MoveStrategy miniMax = new MiniMax(4);
 			//final Move bestMove = miniMax.execute(Table.get().getGameBoard());
 			
+			// If the player answered with the move the engine pondered on,
+			// the ponder search already holds the answer.
+			final Move ponderedMove = Table.get().getPonderer().ponderHit(this.lastMove);
+			if(ponderedMove != null) {
+				this.strategy = Table.get().getPonderer().getStrategy();
+				return ponderedMove;
+			}
+			
 			final Move bestMove;
             final Move bookMove = Table.get().getUseBook()
-                    ? MySqlGamePersistence.get().getNextBestMove(Table.get().getGameBoard(),
-                    Table.get().getGameBoard().currentPlayer(),
-                    Table.get().getMoveLog().getMoves().toString().replaceAll("\\[", "").replaceAll("]", ""))
+                    ? Table.get().openingBook.getNextBestMove(this.board,
+                    this.board.currentPlayer(),
+                    this.gameText)
                     : MoveFactory.getNullMove();
             if (Table.get().getUseBook() && bookMove != MoveFactory.getNullMove()) {
                 bestMove = bookMove;
                 
             }
             else {
-            	final MoveStrategy miniMax = new MiniMax(4);
-    			bestMove = miniMax.execute(Table.get().getGameBoard());
+            	final MiniMax miniMax = new MiniMax(4);
+            	miniMax.setPositionHistory(this.positionHistory);
+            	// The statistics of every search the engine plays from go to the console.
+            	miniMax.addSearchListener(statistics -> System.out.println(statistics));
+            	this.strategy = miniMax;
+    			bestMove = this.strategy.execute(this.board);
             }
 			
 			return bestMove;
@@ -667,14 +773,21 @@ public class Table extends Observable {
 		
 		public void done() {
 			
+			// A cancelled or replaced search was started for a position the
+			// player has since undone, so its move must not reach the board.
+			if(isCancelled() || Table.get().thinkTank != this) {
+				return;
+			}
+			Table.get().thinkTank = null;
+			
 			try {
 				final Move bestMove = get();
 				
 				Table.get().updateComputerMove(bestMove);
 				Table.get().updateGameBoard(Table.get().getGameBoard().currentPlayer().makeMove(bestMove).getToBoard());
 				Table.get().getMoveLog().addMove(bestMove);
-				Table.get().getGameHistoryPanel().redo(Table.get().getGameBoard(), Table.get().getMoveLog());
-				Table.get().getTakenPiecesPanel().redo(Table.get().getMoveLog());
+				Table.get().firePlayedMove(bestMove, Table.get().getGameBoard());
+				startPondering();
 				Table.get().getBoardPanel().drawBoard(Table.get().getGameBoard());
 				Table.get().moveMadeUpdate(PlayerType.COMPUTER);
 				
@@ -683,6 +796,18 @@ public class Table extends Observable {
 			}
 			
 		}
+		
+		// While a human thinks about the reply, keep searching the position after the
+		// reply the engine expects.
+		private void startPondering() {
+			final Board board = Table.get().getGameBoard();
+			if(Table.get().usePondering && this.strategy != null && this.strategy.getPonderMove() != null &&
+			   !Table.get().getGameSetup().isAIPlayer(board.currentPlayer())) {
+				final MiniMax miniMax = new MiniMax(4);
+				miniMax.setPositionHistory(new PositionHistory(Table.get().positionHistory));
+				Table.get().getPonderer().start(board, this.strategy.getPonderMove(), miniMax);
+			}
+		}
 	}
 	
 	public enum BoardDirection {
@@ -3,36 +3,37 @@ package gui;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Graphics2D;
 import java.awt.GridLayout;
-import java.awt.Image;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.List;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.border.EtchedBorder;
 
+import ai.MoveListener;
+import board.Board;
 import board.Move;
-import gui.Table.TilePanel;
 import pieces.Piece;
 
 /*
  * 
  *  This class displays the taken pieces on each side of the chess board. The player has
- *  the opponent pieces on their side to compare evaluations.
+ *  the opponent pieces on their side to compare evaluations. Captures played or taken
+ *  back add or remove a single icon; redo rebuilds both sides when a game starts.
  * 
  */
 
-public class TakenPiecesPanel extends JPanel {
+public class TakenPiecesPanel extends JPanel implements MoveListener {
 	
 	private final JPanel northPanel;
 	private final JPanel southPanel;
+	private final List<Piece> whiteTakenPieces;
+	private final List<Piece> blackTakenPieces;
 	
 	private static final Dimension TAKEN_PIECES_DIMENSION = new Dimension(60, 80);
+	private static final int TAKEN_PIECE_ICON_SIZE = 30;
 	private static final Color PANEL_COLOR = Color.decode("#EEEED3"); //0x312E2B
 ;	private static final EtchedBorder PANEL_BORDER = new EtchedBorder(EtchedBorder.RAISED);
 	
@@ -46,88 +47,85 @@ public class TakenPiecesPanel extends JPanel {
 		this.southPanel = new JPanel(new GridLayout(8, 2));
 		this.northPanel.setBackground(PANEL_COLOR);
 		this.southPanel.setBackground(PANEL_COLOR);
+		this.whiteTakenPieces = new ArrayList<>();
+		this.blackTakenPieces = new ArrayList<>();
 		add(this.northPanel, BorderLayout.NORTH);
 		add(this.southPanel, BorderLayout.SOUTH);
 		setPreferredSize(TAKEN_PIECES_DIMENSION);
 		
 	}
 	
-	public static BufferedImage toBufferedImage(Image img)
-	{
-	    if (img instanceof BufferedImage)
-	    {
-	        return (BufferedImage) img;
-	    }
-
-	    BufferedImage bufferedImage = new BufferedImage(img.getWidth(null), img.getHeight(null), BufferedImage.TYPE_INT_ARGB);
-
-	    Graphics2D bGr = bufferedImage.createGraphics();
-	    bGr.drawImage(img, 0, 0, null);
-	    bGr.dispose();
-
-	    return bufferedImage;
-	}
-	
 	public void redo(final Table.MoveLog moveLog) {
 		
 		this.southPanel.removeAll();
 		this.northPanel.removeAll();
-		
-		final ArrayList<Piece> whiteTakenPieces = new ArrayList<>();
-		final ArrayList<Piece> blackTakenPieces = new ArrayList<>();
+		this.whiteTakenPieces.clear();
+		this.blackTakenPieces.clear();
 		
 		for(final Move move : moveLog.getMoves()) {
 			if(move.isAttack()) {
-				final Piece takenPiece = move.getAttackedPiece();
-				if(takenPiece.getPieceAlliance().isWhite()) {
-					whiteTakenPieces.add(takenPiece);
-				}
-				else if (takenPiece.getPieceAlliance().isBlack()) {
-					blackTakenPieces.add(takenPiece);
-				}
-				else {
-					throw new RuntimeException("Taken Piece is neither black nor white");
-				}
+				addTakenPiece(move.getAttackedPiece());
 			}
 		}
 		
-		Collections.sort(whiteTakenPieces, new Comparator<Piece>() {
-
-			@Override
-			public int compare(Piece o1, Piece o2) {
-				return o1.getPieceValue() - o2.getPieceValue();
-			}
-			
-		});
-		
-		Collections.sort(blackTakenPieces, new Comparator<Piece>() {
-
-			@Override
-			public int compare(Piece o1, Piece o2) {
-				return o1.getPieceValue() - o2.getPieceValue();
-			}
-			
-		});
-		
+		validate();
+		repaint();
 		
-		for (final Piece takenPiece : whiteTakenPieces) {
-			Image piece = TilePanel.getPieceImages()[takenPiece.getPieceType().getAssignedNum()].getScaledInstance(30, 30, BufferedImage.SCALE_SMOOTH);
-			BufferedImage image = toBufferedImage(piece);
-			final ImageIcon icon = new ImageIcon(image);
-			final JLabel imageLabel = new JLabel(icon);
-			this.northPanel.add(imageLabel);
+	}
+	
+	@Override
+	public void movePlayed(final Move move, final Board board) {
+		if(move.isAttack()) {
+			addTakenPiece(move.getAttackedPiece());
+			validate();
+			repaint();
 		}
-		
-		for (final Piece takenPiece : blackTakenPieces) {
-			Image piece = TilePanel.getPieceImages()[takenPiece.getPieceType().getAssignedNum() + 6].getScaledInstance(30, 30, BufferedImage.SCALE_SMOOTH);
-			final BufferedImage image = toBufferedImage(piece);
-			final ImageIcon icon = new ImageIcon(image);
-			final JLabel imageLabel = new JLabel(icon);
-			this.southPanel.add(imageLabel);
+	}
+	
+	@Override
+	public void moveUndone(final Move move, final Board board) {
+		if(move.isAttack()) {
+			removeTakenPiece(move.getAttackedPiece());
+			validate();
+			repaint();
 		}
-		
-		validate();
-		
+	}
+	
+	// Taken pieces are kept sorted by value, cheapest first. A piece goes after the
+	// pieces of equal value so the order matches the order they were taken in.
+	private void addTakenPiece(final Piece takenPiece) {
+		final List<Piece> takenPieces = getTakenPieces(takenPiece);
+		int index = takenPieces.size();
+		while(index > 0 && takenPieces.get(index - 1).getPieceValue() > takenPiece.getPieceValue()) {
+			index--;
+		}
+		takenPieces.add(index, takenPiece);
+		final ImageIcon icon = PieceImages.getPieceIcon(takenPiece, TAKEN_PIECE_ICON_SIZE);
+		getPanel(takenPiece).add(new JLabel(icon), index);
+	}
+	
+	private void removeTakenPiece(final Piece takenPiece) {
+		final List<Piece> takenPieces = getTakenPieces(takenPiece);
+		final int index = takenPieces.lastIndexOf(takenPiece);
+		if(index >= 0) {
+			takenPieces.remove(index);
+			getPanel(takenPiece).remove(index);
+		}
+	}
+	
+	private List<Piece> getTakenPieces(final Piece takenPiece) {
+		if(takenPiece.getPieceAlliance().isWhite()) {
+			return this.whiteTakenPieces;
+		}
+		else if (takenPiece.getPieceAlliance().isBlack()) {
+			return this.blackTakenPieces;
+		}
+		throw new RuntimeException("Taken Piece is neither black nor white");
+	}
+	
+	// White pieces are shown at the top and black pieces at the bottom.
+	private JPanel getPanel(final Piece takenPiece) {
+		return takenPiece.getPieceAlliance().isWhite() ? this.northPanel : this.southPanel;
 	}
 
 }
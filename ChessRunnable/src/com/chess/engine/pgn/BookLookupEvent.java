@@ -0,0 +1,34 @@
+package pgn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ *
+ *  Flight Recorder event covering one opening book probe.
+ *
+ */
+
+@Name("chess.BookLookup")
+@Label("Book Lookup")
+@Category({"Chess Engine", "Opening Book"})
+@Description("Probe of the opening book for the next move")
+@StackTrace(false)
+class BookLookupEvent extends jdk.jfr.Event {
+
+    @Label("Book")
+    String book;
+
+    @Label("Ply")
+    int ply;
+
+    @Label("Book Move")
+    String bookMove;
+
+    @Label("Hits")
+    long hits;
+
+}
@@ -0,0 +1,61 @@
+package pgn;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import board.Board;
+
+/*
+ *
+ *  An EPDPosition is one record of an EPD file: a position and its operations,
+ *  in the order they were written. Each opcode maps to its operands with any
+ *  quotes taken off, so bm Nf3 Nc3; gives ["Nf3", "Nc3"] and id "WAC.001";
+ *  gives ["WAC.001"]. See FenUtilities for reading and writing records.
+ *
+ */
+
+public final class EPDPosition {
+
+	private final Board board;
+	private final Map<String, List<String>> operations;
+
+	public EPDPosition(final Board board,
+					   final Map<String, List<String>> operations) {
+		this.board = board;
+		this.operations = Collections.unmodifiableMap(operations);
+	}
+
+	public Board getBoard() {
+		return this.board;
+	}
+
+	public Map<String, List<String>> getOperations() {
+		return this.operations;
+	}
+
+	public boolean hasOperation(final String opcode) {
+		return this.operations.containsKey(opcode);
+	}
+
+	// The operands of the opcode, empty when the record does not have it.
+	public List<String> getOperands(final String opcode) {
+		return this.operations.getOrDefault(opcode, Collections.emptyList());
+	}
+
+	// The first operand of the opcode, or null when the record does not have one.
+	public String getOperand(final String opcode) {
+		final List<String> operands = getOperands(opcode);
+		return operands.isEmpty() ? null : operands.get(0);
+	}
+
+	public String getId() {
+		return getOperand("id");
+	}
+
+	@Override
+	public String toString() {
+		return FenUtilities.createEPDFromPosition(this);
+	}
+
+}
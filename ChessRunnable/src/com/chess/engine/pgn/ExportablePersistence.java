@@ -0,0 +1,17 @@
+package pgn;
+
+import java.io.IOException;
+
+/*
+ *
+ *  An ExportablePersistence keeps whole games, not just statistics of them, and
+ *  can write every one of them back out, for moving a game store to another
+ *  machine with PGNUtilities.exportPGNFile.
+ *
+ */
+
+public interface ExportablePersistence extends PGNPersistence {
+
+    void exportGames(PGNWriter writer) throws IOException;
+
+}
@@ -1,205 +1,431 @@
 package pgn;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import ally.Alliance;
 import board.Board;
 import board.Board.Builder;
 import board.BoardUtils;
+import board.Zobrist;
 import pieces.Bishop;
 import pieces.King;
 import pieces.Knight;
 import pieces.Pawn;
+import pieces.Piece;
 import pieces.Queen;
 import pieces.Rook;
 
+/*
+ *
+ *  FenUtilities reads and writes positions as FEN, all six fields, and as EPD,
+ *  the first four fields followed by operations such as bm, am and id. Text is
+ *  read in one pass, straight into a Board.Builder, with pieces taken from a
+ *  table made once for every kind, colour and square instead of being created
+ *  per position. Positions are written into a single StringBuilder.
+ *
+ *  The engine keeps castling rights as whether the king and the rook have
+ *  moved, so a right in the FEN gives the king and that rook their first move,
+ *  and the rights written out are the ones the move generator will honour.
+ *
+ */
+
 public class FenUtilities {
 
+	private static final String PIECE_LETTERS = "PNBRQKpnbrqk";
+	private static final Piece[][] PIECE_CACHE = createPieceCache();
+	private static final int WHITE_KING_COORDINATE = 60;
+	private static final int BLACK_KING_COORDINATE = 4;
+
 	private FenUtilities() {
 		throw new RuntimeException("Not instantiable");
 	}
-	
+
 	public static Board createGameFromFEN(final String fenString) {
-		
-		return parseFEN(fenString);
-	}
-	
-	private static Board parseFEN(final String fenString) {
-        final String[] fenPartitions = fenString.trim().split(" ");
-        final Builder builder = new Builder();
-        
-        final boolean whiteKingSideCastle = whiteKingSideCastle(fenPartitions[2]);
-        final boolean whiteQueenSideCastle = whiteQueenSideCastle(fenPartitions[2]);
-        final boolean blackKingSideCastle = blackKingSideCastle(fenPartitions[2]);
-        final boolean blackQueenSideCastle = blackQueenSideCastle(fenPartitions[2]);
-        
-        final String gameConfiguration = fenPartitions[0];
-        final char[] boardTiles = gameConfiguration.replaceAll("/", "")
-                .replaceAll("8", "--------")
-                .replaceAll("7", "-------")
-                .replaceAll("6", "------")
-                .replaceAll("5", "-----")
-                .replaceAll("4", "----")
-                .replaceAll("3", "---")
-                .replaceAll("2", "--")
-                .replaceAll("1", "-")
-                .toCharArray();
-        int i = 0;
-        
-        while (i < boardTiles.length) {
-            switch (boardTiles[i]) {
-                case 'r':
-                    builder.setPiece(new Rook(Alliance.BLACK, i));
-                    i++;
-                    break;
-                case 'n':
-                    builder.setPiece(new Knight(Alliance.BLACK, i));
-                    i++;
-                    break;
-                case 'b':
-                    builder.setPiece(new Bishop(Alliance.BLACK, i));
-                    i++;
-                    break;
-                case 'q':
-                    builder.setPiece(new Queen(Alliance.BLACK, i));
-                    i++;
-                    break;
-                case 'k':
-                    builder.setPiece(new King(Alliance.BLACK, i, blackKingSideCastle, blackQueenSideCastle));
-                    i++;
-                    break;
-                case 'p':
-                    builder.setPiece(new Pawn(Alliance.BLACK, i));
-                    i++;
-                    break;
-                    
-                    
-                case 'R':
-                    builder.setPiece(new Rook(Alliance.WHITE, i));
-                    i++;
-                    break;
-                case 'N':
-                    builder.setPiece(new Knight(Alliance.WHITE, i));
-                    i++;
-                    break;
-                case 'B':
-                    builder.setPiece(new Bishop(Alliance.WHITE, i));
-                    i++;
-                    break;
-                case 'Q':
-                    builder.setPiece(new Queen(Alliance.WHITE, i));
-                    i++;
-                    break;
-                case 'K':
-                    builder.setPiece(new King(Alliance.WHITE, i, whiteKingSideCastle, whiteQueenSideCastle));
-                    i++;
-                    break;
-                case 'P':
-                    builder.setPiece(new Pawn(Alliance.WHITE, i));
-                    i++;
-                    break;
-                case '-':
-                    i++;
-                    break;
-                default:
-                    throw new RuntimeException("Invalid FEN String " +gameConfiguration);
-            }
-        }
-        builder.setMoveMaker(moveMaker(fenPartitions[1]));
-        return builder.build();
-    }
-	
-	private static Alliance moveMaker(final String moveMakerString) {
-	        if(moveMakerString.equals("w")) {
-	            return Alliance.WHITE;
-	        } else if(moveMakerString.equals("b")) {
-	            return Alliance.BLACK;
-	        }
-	        throw new RuntimeException("Invalid FEN String " + moveMakerString);
-	}
-	  
-	private static boolean whiteKingSideCastle(final String fenCastleString) {
-	      return fenCastleString.contains("K");
-	}
-	
-    private static boolean whiteQueenSideCastle(final String fenCastleString) {
-	      return fenCastleString.contains("Q");
-	}
-	
-	private static boolean blackKingSideCastle(final String fenCastleString) {
-	      return fenCastleString.contains("k");
+		final FenReader reader = new FenReader(fenString);
+		final Builder builder = reader.readPosition();
+		if(reader.hasNextField()) {
+			builder.setHalfmoveClock(reader.readNumber());
+		}
+		if(reader.hasNextField()) {
+			builder.setFullmoveNumber(reader.readNumber());
+		}
+		return builder.build();
 	}
-	
-	private static boolean blackQueenSideCastle(final String fenCastleString) {
-	      return fenCastleString.contains("q");
+
+	// Reads an EPD record. The hmvc and fmvn operations, when present, set the clocks
+	// that a FEN keeps in its last two fields.
+	public static EPDPosition createPositionFromEPD(final String epdString) {
+		final FenReader reader = new FenReader(epdString);
+		final Builder builder = reader.readPosition();
+		final Map<String, List<String>> operations = reader.readOperations();
+		if(operations.containsKey("hmvc")) {
+			builder.setHalfmoveClock(Integer.parseInt(operations.get("hmvc").get(0)));
+		}
+		if(operations.containsKey("fmvn")) {
+			builder.setFullmoveNumber(Integer.parseInt(operations.get("fmvn").get(0)));
+		}
+		return new EPDPosition(builder.build(), operations);
 	}
-	
-    public static String parseFENfromGame(final Board board) {
-		return calculateBoardText(board) + " " + 
-	           calculateCurrentPlayerText(board) + " " +
-	           calculateCastleText(board) + " " + 
-	           calculateEnPassantSquare(board) + 
-	           "0 1";
+
+	public static String parseFENfromGame(final Board board) {
+		final StringBuilder builder = new StringBuilder(96);
+		appendPosition(builder, board);
+		builder.append(' ').append(board.getHalfmoveClock());
+		builder.append(' ').append(board.getFullmoveNumber());
+		return builder.toString();
 	}
 
-	private static String calculateBoardText(Board board) {
-		final StringBuilder builder = new StringBuilder();
-		
-		for(int i = 0; i < BoardUtils.NUM_TILES; i++) {
-			final String tileText = board.getTile(i).toString();
-			builder.append(tileText);
-		}
-		builder.insert(8, "/");
-		builder.insert(17, "/");
-		builder.insert(26, "/");
-		builder.insert(25, "/");
-		builder.insert(44, "/");
-		builder.insert(53, "/");
-		builder.insert(62, "/");
-		
-		return builder.toString().replaceAll("--------", "8")
-								 .replaceAll("-------", "7")
-								 .replaceAll("------", "6")
-								 .replaceAll("-----", "5")
-								 .replaceAll("----", "4")
-								 .replaceAll("---", "3")
-								 .replaceAll("--", "2")
-								 .replaceAll("-", "1");
+	public static String createEPDFromPosition(final EPDPosition position) {
+		final StringBuilder builder = new StringBuilder(128);
+		appendPosition(builder, position.getBoard());
+		for(final Map.Entry<String, List<String>> operation : position.getOperations().entrySet()) {
+			builder.append(' ').append(operation.getKey());
+			for(final String operand : operation.getValue()) {
+				builder.append(' ');
+				appendOperand(builder, operation.getKey(), operand);
+			}
+			builder.append(';');
+		}
+		return builder.toString();
 	}
 
-	private static String calculateEnPassantSquare(final Board board) {
+	// The four fields FEN and EPD share: placement, side to move, castling and en passant.
+	private static void appendPosition(final StringBuilder builder,
+									   final Board board) {
+		for(int row = 0; row < BoardUtils.NUM_TILES_PER_ROW; row++) {
+			int emptyTiles = 0;
+			for(int column = 0; column < BoardUtils.NUM_TILES_PER_ROW; column++) {
+				final Piece piece = board.getTile(row * BoardUtils.NUM_TILES_PER_ROW + column).getPiece();
+				if(piece == null) {
+					emptyTiles++;
+					continue;
+				}
+				if(emptyTiles > 0) {
+					builder.append((char) ('0' + emptyTiles));
+					emptyTiles = 0;
+				}
+				final char pieceLetter = piece.getPieceType().toString().charAt(0);
+				builder.append(piece.getPieceAlliance().isWhite() ? pieceLetter : Character.toLowerCase(pieceLetter));
+			}
+			if(emptyTiles > 0) {
+				builder.append((char) ('0' + emptyTiles));
+			}
+			if(row < BoardUtils.NUM_TILES_PER_ROW - 1) {
+				builder.append('/');
+			}
+		}
+		builder.append(board.currentPlayer().getAlliance().isWhite() ? " w " : " b ");
+		final int castleStart = builder.length();
+		if(Zobrist.isCastleCapable(board, Alliance.WHITE, 63)) {
+			builder.append('K');
+		}
+		if(Zobrist.isCastleCapable(board, Alliance.WHITE, 56)) {
+			builder.append('Q');
+		}
+		if(Zobrist.isCastleCapable(board, Alliance.BLACK, 7)) {
+			builder.append('k');
+		}
+		if(Zobrist.isCastleCapable(board, Alliance.BLACK, 0)) {
+			builder.append('q');
+		}
+		if(builder.length() == castleStart) {
+			builder.append('-');
+		}
+		builder.append(' ');
 		final Pawn enPassantPawn = board.getEnPassantPawn();
 		if(enPassantPawn != null) {
-			return BoardUtils.getPositionAtCoordinate(enPassantPawn.getPiecePosition() + 
-					(8 * enPassantPawn.getPieceAlliance().getOppositeDirection()));
+			builder.append(BoardUtils.getPositionAtCoordinate(enPassantPawn.getPiecePosition() +
+					(BoardUtils.NUM_TILES_PER_ROW * enPassantPawn.getPieceAlliance().getOppositeDirection())));
+		}
+		else {
+			builder.append('-');
 		}
-		
-		return "-";
 	}
 
-	private static String calculateCastleText(final Board board) {
-		final StringBuilder builder = new StringBuilder();
-		
-		if(board.whitePlayer().isKingSideCastleCapable()) {
-			builder.append("K");
+	// Strings are quoted, as are operands that would otherwise not read back as one.
+	private static void appendOperand(final StringBuilder builder,
+									  final String opcode,
+									  final String operand) {
+		boolean isQuoted = opcode.equals("id") || ((opcode.charAt(0) == 'c' || opcode.charAt(0) == 'v') &&
+				opcode.length() == 2 && Character.isDigit(opcode.charAt(1))) || operand.isEmpty();
+		for(int i = 0; i < operand.length() && !isQuoted; i++) {
+			final char c = operand.charAt(i);
+			isQuoted = c == ' ' || c == ';' || c == '"';
 		}
-		if(board.whitePlayer().isQueenSideCastleCapable()) {
-			builder.append("Q");
+		if(!isQuoted) {
+			builder.append(operand);
+			return;
 		}
-		if(board.blackPlayer().isKingSideCastleCapable()) {
-			builder.append("k");
+		builder.append('"');
+		for(int i = 0; i < operand.length(); i++) {
+			final char c = operand.charAt(i);
+			if(c == '"' || c == '\\') {
+				builder.append('\\');
+			}
+			builder.append(c);
 		}
-		if(board.blackPlayer().isQueenSideCastleCapable()) {
-			builder.append("q");
+		builder.append('"');
+	}
+
+	// Pieces are immutable and boards share them, so one of each kind, colour and
+	// square is enough. These are the pieces as they stand in a FEN: rooks and
+	// kings that have moved, and the rest ready for a first move. A castling right
+	// swaps in a king and rook that have not moved.
+	private static Piece[][] createPieceCache() {
+		final Piece[][] pieceCache = new Piece[PIECE_LETTERS.length()][BoardUtils.NUM_TILES];
+		for(int i = 0; i < BoardUtils.NUM_TILES; i++) {
+			for(final Alliance alliance : Alliance.values()) {
+				final int offset = alliance.isWhite() ? 0 : 6;
+				pieceCache[offset][i] = new Pawn(alliance, i);
+				pieceCache[offset + 1][i] = new Knight(alliance, i);
+				pieceCache[offset + 2][i] = new Bishop(alliance, i);
+				pieceCache[offset + 3][i] = new Rook(alliance, i, false);
+				pieceCache[offset + 4][i] = new Queen(alliance, i);
+				pieceCache[offset + 5][i] = new King(alliance, i, false, false, false, false);
+			}
 		}
-		
-		final String result = builder.toString();
-		return result.isEmpty() ? "-" : result;
-		
+		return pieceCache;
 	}
 
-	private static String calculateCurrentPlayerText(final Board board) {
-		return board.currentPlayer().toString().substring(0,1).toLowerCase();
+	private static Piece getPiece(final char pieceLetter,
+								  final int tileCoordinate) {
+		final int pieceIndex = PIECE_LETTERS.indexOf(pieceLetter);
+		return pieceIndex < 0 ? null : PIECE_CACHE[pieceIndex][tileCoordinate];
 	}
-	
-	
-	
+
+	// Reads the fields of one FEN or EPD string from left to right.
+	private static final class FenReader {
+
+		private final String text;
+		private int index;
+
+		FenReader(final String text) {
+			this.text = text;
+			this.index = 0;
+			skipSpaces();
+		}
+
+		Builder readPosition() {
+			final Builder builder = new Builder();
+			final Piece[] placement = readPlacement(builder);
+			skipSeparator();
+			final Alliance moveMaker = readMoveMaker();
+			builder.setMoveMaker(moveMaker);
+			skipSeparator();
+			readCastling(builder, placement);
+			skipSeparator();
+			readEnPassant(builder, placement, moveMaker);
+			return builder;
+		}
+
+		boolean hasNextField() {
+			skipSpaces();
+			return this.index < this.text.length();
+		}
+
+		int readNumber() {
+			int number = 0;
+			final int start = this.index;
+			while(this.index < this.text.length() && Character.isDigit(this.text.charAt(this.index))) {
+				number = number * 10 + (this.text.charAt(this.index++) - '0');
+			}
+			if(this.index == start) {
+				throw invalid();
+			}
+			return number;
+		}
+
+		// opcode operand operand; ... Operands are kept without their quotes.
+		Map<String, List<String>> readOperations() {
+			final Map<String, List<String>> operations = new LinkedHashMap<>();
+			while(hasNextField()) {
+				final int opcodeStart = this.index;
+				while(this.index < this.text.length() && !isOperationEnd(this.text.charAt(this.index))) {
+					this.index++;
+				}
+				final String opcode = this.text.substring(opcodeStart, this.index);
+				final List<String> operands = new ArrayList<>(1);
+				while(true) {
+					skipSpaces();
+					if(this.index >= this.text.length() || this.text.charAt(this.index) == ';') {
+						this.index++;
+						break;
+					}
+					operands.add(this.text.charAt(this.index) == '"' ? readString() : readOperand());
+				}
+				if(opcode.isEmpty()) {
+					continue;
+				}
+				operations.put(opcode, Collections.unmodifiableList(operands));
+			}
+			return operations;
+		}
+
+		private Piece[] readPlacement(final Builder builder) {
+			final Piece[] placement = new Piece[BoardUtils.NUM_TILES];
+			int tileCoordinate = 0;
+			int column = 0;
+			while(this.index < this.text.length() && this.text.charAt(this.index) != ' ') {
+				final char c = this.text.charAt(this.index++);
+				if(c == '/') {
+					if(column != BoardUtils.NUM_TILES_PER_ROW) {
+						throw invalid();
+					}
+					column = 0;
+				}
+				else if(c >= '1' && c <= '8') {
+					tileCoordinate += c - '0';
+					column += c - '0';
+				}
+				else {
+					final Piece piece = tileCoordinate < BoardUtils.NUM_TILES ? getPiece(c, tileCoordinate) : null;
+					if(piece == null) {
+						throw invalid();
+					}
+					builder.setPiece(piece);
+					placement[tileCoordinate++] = piece;
+					column++;
+				}
+				if(column > BoardUtils.NUM_TILES_PER_ROW) {
+					throw invalid();
+				}
+			}
+			if(tileCoordinate != BoardUtils.NUM_TILES || column != BoardUtils.NUM_TILES_PER_ROW) {
+				throw invalid();
+			}
+			return placement;
+		}
+
+		private Alliance readMoveMaker() {
+			final char c = this.index < this.text.length() ? this.text.charAt(this.index++) : '?';
+			if(c == 'w') {
+				return Alliance.WHITE;
+			}
+			if(c == 'b') {
+				return Alliance.BLACK;
+			}
+			throw invalid();
+		}
+
+		private void readCastling(final Builder builder,
+								  final Piece[] placement) {
+			boolean whiteKingSide = false;
+			boolean whiteQueenSide = false;
+			boolean blackKingSide = false;
+			boolean blackQueenSide = false;
+			while(this.index < this.text.length() && this.text.charAt(this.index) != ' ') {
+				switch (this.text.charAt(this.index++)) {
+					case 'K':
+						whiteKingSide = isUnmovedRook(builder, placement, Alliance.WHITE, 63);
+						break;
+					case 'Q':
+						whiteQueenSide = isUnmovedRook(builder, placement, Alliance.WHITE, 56);
+						break;
+					case 'k':
+						blackKingSide = isUnmovedRook(builder, placement, Alliance.BLACK, 7);
+						break;
+					case 'q':
+						blackQueenSide = isUnmovedRook(builder, placement, Alliance.BLACK, 0);
+						break;
+					case '-':
+						break;
+					default:
+						throw invalid();
+				}
+			}
+			setUnmovedKing(builder, placement, Alliance.WHITE, WHITE_KING_COORDINATE, whiteKingSide, whiteQueenSide);
+			setUnmovedKing(builder, placement, Alliance.BLACK, BLACK_KING_COORDINATE, blackKingSide, blackQueenSide);
+		}
+
+		// The en passant field names the square behind the pawn that just jumped.
+		// It is only kept when that pawn is really there.
+		private void readEnPassant(final Builder builder,
+								   final Piece[] placement,
+								   final Alliance moveMaker) {
+			final char file = this.index < this.text.length() ? this.text.charAt(this.index++) : '?';
+			if(file == '-') {
+				return;
+			}
+			final char rank = this.index < this.text.length() ? this.text.charAt(this.index++) : '?';
+			if(file < 'a' || file > 'h' || rank != (moveMaker.isWhite() ? '6' : '3')) {
+				throw invalid();
+			}
+			final int targetCoordinate = ('8' - rank) * BoardUtils.NUM_TILES_PER_ROW + (file - 'a');
+			final Piece pawn = placement[targetCoordinate - moveMaker.getDirection() * BoardUtils.NUM_TILES_PER_ROW];
+			if(pawn != null && pawn.getPieceType().isPawn() && pawn.getPieceAlliance() != moveMaker) {
+				builder.setEnPassantPawn((Pawn) pawn);
+			}
+		}
+
+		private static boolean isUnmovedRook(final Builder builder,
+											 final Piece[] placement,
+											 final Alliance alliance,
+											 final int rookCoordinate) {
+			final Piece rook = placement[rookCoordinate];
+			if(rook == null || !rook.getPieceType().isRook() || rook.getPieceAlliance() != alliance) {
+				return false;
+			}
+			builder.setPiece(new Rook(alliance, rookCoordinate, true));
+			return true;
+		}
+
+		private static void setUnmovedKing(final Builder builder,
+										   final Piece[] placement,
+										   final Alliance alliance,
+										   final int kingCoordinate,
+										   final boolean kingSideCastle,
+										   final boolean queenSideCastle) {
+			final Piece king = placement[kingCoordinate];
+			if((kingSideCastle || queenSideCastle) && king != null && king.getPieceType().isKing() &&
+			   king.getPieceAlliance() == alliance) {
+				builder.setPiece(new King(alliance, kingCoordinate, kingSideCastle, queenSideCastle));
+			}
+		}
+
+		private String readOperand() {
+			final int start = this.index;
+			while(this.index < this.text.length() && !isOperationEnd(this.text.charAt(this.index))) {
+				this.index++;
+			}
+			return this.text.substring(start, this.index);
+		}
+
+		private String readString() {
+			final StringBuilder builder = new StringBuilder();
+			this.index++;
+			while(this.index < this.text.length() && this.text.charAt(this.index) != '"') {
+				final char c = this.text.charAt(this.index++);
+				builder.append(c == '\\' && this.index < this.text.length() ? this.text.charAt(this.index++) : c);
+			}
+			this.index++;
+			return builder.toString();
+		}
+
+		private void skipSeparator() {
+			if(this.index >= this.text.length() || !Character.isWhitespace(this.text.charAt(this.index))) {
+				throw invalid();
+			}
+			skipSpaces();
+		}
+
+		private void skipSpaces() {
+			while(this.index < this.text.length() && Character.isWhitespace(this.text.charAt(this.index))) {
+				this.index++;
+			}
+		}
+
+		private static boolean isOperationEnd(final char c) {
+			return c == ' ' || c == ';' || c == '\t';
+		}
+
+		private RuntimeException invalid() {
+			return new RuntimeException("Invalid FEN String " + this.text);
+		}
+
+	}
+
 }
@@ -0,0 +1,195 @@
+package pgn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ally.Alliance;
+import board.Board;
+import board.Move;
+import board.Move.MoveFactory;
+import player.Player;
+
+/*
+ * 
+ *  MoveTrieBook is an opening book held in memory. Every game that is persisted
+ *  adds its moves to a trie, where each node is the position after a sequence of
+ *  moves and counts how many of the games through it white won, black won or
+ *  drew. Looking up the next book move walks down the trie one move per ply, so
+ *  it takes microseconds instead of a database query.
+ * 
+ *  The book is filled from the same PGN files as the database, through
+ *  PGNUtilities.persistPGNFile(file, book).
+ * 
+ */
+
+public class MoveTrieBook implements PGNPersistence {
+
+    private final Node root;
+    // Move texts repeat across thousands of games, so the trie shares one copy of each.
+    private final Map<String, String> moveTexts;
+    private int gameCount;
+
+    public MoveTrieBook() {
+        this.root = new Node();
+        this.moveTexts = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void persistGame(final Game game) {
+        final String winner = game.getWinner();
+        Node node = this.root;
+        node.addResult(winner);
+        for(final String moveText : game.getMoves()) {
+            node = node.getOrAddChild(internMoveText(stripAnnotations(moveText)));
+            node.addResult(winner);
+        }
+        this.gameCount++;
+    }
+
+    @Override
+    public Move getNextBestMove(final Board board,
+                                final Player player,
+                                final String gameText) {
+        final BookLookupEvent lookupEvent = new BookLookupEvent();
+        lookupEvent.begin();
+        final String[] playedMoves = gameText.trim().isEmpty() ? new String[0] : gameText.split(",");
+        String bestMove = "";
+        int hits = 0;
+        synchronized (this) {
+            final Node node = findNode(playedMoves);
+            if(node != null) {
+                final int best = node.bestChild(player.getAlliance());
+                if(best >= 0) {
+                    bestMove = node.moves[best];
+                    hits = node.children[best].getWins(player.getAlliance());
+                }
+            }
+        }
+        System.out.println("\tselected book move = " +bestMove+ " with " +hits+ " hits");
+        final Move bookMove = bestMove.isEmpty() ? MoveFactory.getNullMove() : PGNUtilities.createMove(board, bestMove);
+        if(lookupEvent.shouldCommit()) {
+            lookupEvent.book = "MoveTrie";
+            lookupEvent.ply = playedMoves.length;
+            lookupEvent.bookMove = bestMove;
+            lookupEvent.hits = hits;
+            lookupEvent.commit();
+        }
+        return bookMove;
+    }
+
+    public synchronized int getGameCount() {
+        return this.gameCount;
+    }
+
+    // Follows the played moves down the trie, or returns null once the game has
+    // left the book or a move could stand for more than one book move.
+    private Node findNode(final String[] playedMoves) {
+        Node node = this.root;
+        for(final String playedMove : playedMoves) {
+            final int child = node.findChild(stripAnnotations(playedMove.trim()));
+            if(child < 0) {
+                return null;
+            }
+            node = node.children[child];
+        }
+        return node;
+    }
+
+    private String internMoveText(final String moveText) {
+        return this.moveTexts.computeIfAbsent(moveText, text -> text);
+    }
+
+    // Check and mate signs and move comments such as ! or ?! do not change the move.
+    static String stripAnnotations(final String moveText) {
+        int end = moveText.length();
+        while(end > 0 && "+#!?".indexOf(moveText.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return moveText.substring(0, end);
+    }
+
+    // A Node is the position after the moves on the path to it. Its children are
+    // kept in two small parallel arrays, as a position rarely has more than a few
+    // book moves and a scan of them is faster than hashing.
+    private static final class Node {
+
+        private String[] moves;
+        private Node[] children;
+        private int childCount;
+        private int whiteWins;
+        private int blackWins;
+        private int draws;
+
+        Node() {
+            this.moves = new String[0];
+            this.children = new Node[0];
+        }
+
+        void addResult(final String winner) {
+            if(winner.equals("White")) {
+                this.whiteWins++;
+            }
+            else if(winner.equals("Black")) {
+                this.blackWins++;
+            }
+            else if(winner.equals("Tie")) {
+                this.draws++;
+            }
+        }
+
+        int getWins(final Alliance alliance) {
+            return alliance.isWhite() ? this.whiteWins : this.blackWins;
+        }
+
+        int getGames() {
+            return this.whiteWins + this.blackWins + this.draws;
+        }
+
+        Node getOrAddChild(final String moveText) {
+            for(int i = 0; i < this.childCount; i++) {
+                if(this.moves[i].equals(moveText)) {
+                    return this.children[i];
+                }
+            }
+            if(this.childCount == this.moves.length) {
+                final int capacity = Math.max(2, this.childCount * 2);
+                this.moves = Arrays.copyOf(this.moves, capacity);
+                this.children = Arrays.copyOf(this.children, capacity);
+            }
+            final Node child = new Node();
+            this.moves[this.childCount] = moveText;
+            this.children[this.childCount] = child;
+            this.childCount++;
+            return child;
+        }
+
+        int findChild(final String moveText) {
+            for(int i = 0; i < this.childCount; i++) {
+                if(this.moves[i].equals(moveText)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // The move that won the most games for the side to move, with the number of
+        // games played breaking ties. Moves that never won are not played.
+        int bestChild(final Alliance alliance) {
+            int best = -1;
+            for(int i = 0; i < this.childCount; i++) {
+                final Node child = this.children[i];
+                if(child.getWins(alliance) == 0) {
+                    continue;
+                }
+                if(best < 0 || child.getWins(alliance) > this.children[best].getWins(alliance) ||
+                   (child.getWins(alliance) == this.children[best].getWins(alliance) &&
+                    child.getGames() > this.children[best].getGames())) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+}
@@ -1,11 +1,15 @@
 package pgn;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import board.Board;
 import board.Move;
@@ -18,19 +22,29 @@ import player.Player;
  * 
  */
 
-public class MySqlGamePersistence implements PGNPersistence {
+public class MySqlGamePersistence implements ExportablePersistence {
 
     private final Connection dbConnection;
 
     private static MySqlGamePersistence INSTANCE = new MySqlGamePersistence();
     private static final String JDBC_DRIVER = "com.mysql.cj.jdbc.Driver";
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/chessgame";
+    // Without rewriteBatchedStatements the driver sends a batch one row at a time.
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/chessgame?rewriteBatchedStatements=true";
     private static final String USER = "root";
     private static final String PASS = "Pants.57";
     private static final String NEXT_BEST_MOVE_QUERY =
         "SELECT SUBSTR(g1.moves, LENGTH('%s') + %d, INSTR(SUBSTR(g1.moves, LENGTH('%s') + %d, LENGTH(g1.moves)), ',') - 1), " +
         "COUNT(*) FROM game g1 WHERE g1.moves LIKE '%s%%' AND (outcome = '%s') GROUP BY substr(g1.moves, LENGTH('%s') + %d, " +
         "INSTR(substr(g1.moves, LENGTH('%s') + %d, LENGTH(g1.moves)), ',') - 1) ORDER BY 2 DESC";
+    private static final String INSERT_GAME_SQL = "INSERT INTO Game(id, outcome, moves) VALUES(?, ?, ?);";
+    private static final String EXPORT_GAMES_SQL = "SELECT id, outcome, moves FROM Game ORDER BY id";
+    private static final int DEFAULT_IMPORT_BATCH_SIZE = 1000;
+
+    private int importBatchSize = DEFAULT_IMPORT_BATCH_SIZE;
+    private PreparedStatement importStatement;
+    private final List<Game> pendingGames = new ArrayList<>();
+    private int lostGames;
+    private int nextGameId = -1;
 
 
     private MySqlGamePersistence() {
@@ -56,12 +70,183 @@ public class MySqlGamePersistence implements PGNPersistence {
         return INSTANCE;
     }
 
+    // The number of games sent to the database in one batch and committed in one
+    // transaction during an import.
+    public synchronized void setImportBatchSize(final int importBatchSize) {
+        this.importBatchSize = Math.max(1, importBatchSize);
+    }
+
+    @Override
+    public synchronized void persistGame(final Game game) {
+        if(this.importStatement != null) {
+            addToBatch(game);
+        }
+        else {
+            executePersist(game);
+        }
+    }
+
+    /*
+     * 
+     *  An import runs with autocommit off and a single prepared statement. Games are
+     *  added to a JDBC batch, and each full batch is sent in one round trip and
+     *  committed as one transaction. One bad row fails the whole batch, so a failed
+     *  batch is rolled back and its games are inserted again one at a time; only the
+     *  games the table refuses are lost, and they are counted and reported. Ids are
+     *  handed out from MAX(ID), read once per import and again after a failure.
+     * 
+     */
+
+    @Override
+    public synchronized void beginImport() {
+        try {
+            this.dbConnection.setAutoCommit(false);
+            this.importStatement = this.dbConnection.prepareStatement(INSERT_GAME_SQL);
+            this.pendingGames.clear();
+            this.lostGames = 0;
+            this.nextGameId = getMaxGameRow() + 1;
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            endImport();
+        }
+    }
+
+    @Override
+    public synchronized void endImport() {
+        try {
+            if(this.importStatement != null) {
+                flushBatch();
+                this.importStatement.close();
+            }
+            this.dbConnection.setAutoCommit(true);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+        }
+        finally {
+            this.importStatement = null;
+            // Other writers may add games before the next insert, so its id is read afresh.
+            this.nextGameId = -1;
+        }
+    }
+
+    @Override
+    public synchronized int getLostGameCount() {
+        return this.lostGames;
+    }
+
+    private void addToBatch(final Game game) {
+        try {
+            setGameParameters(this.importStatement, game);
+            this.importStatement.addBatch();
+            this.pendingGames.add(game);
+            if(this.pendingGames.size() >= this.importBatchSize) {
+                flushBatch();
+            }
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            this.lostGames++;
+        }
+    }
+
+    private void flushBatch() {
+        if(this.pendingGames.isEmpty()) {
+            return;
+        }
+        try {
+            this.importStatement.executeBatch();
+            this.dbConnection.commit();
+        }
+        catch (final SQLException e) {
+            rollback();
+            final int lostGames = persistOneByOne(this.pendingGames);
+            this.lostGames += lostGames;
+            System.out.println("A batch of " + this.pendingGames.size() + " games failed (" + e.getMessage() +
+                    "), retried one at a time, " + lostGames + " games could not be stored");
+        }
+        finally {
+            this.pendingGames.clear();
+        }
+    }
+
+    // Inserts the games of a failed batch one per transaction and returns how many
+    // of them failed again.
+    private int persistOneByOne(final List<Game> games) {
+        int lostGames = 0;
+        try {
+            this.importStatement.clearBatch();
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+        }
+        // The ids of the failed batch may be partly taken, so ask the table again.
+        this.nextGameId = getMaxGameRow() + 1;
+        for(final Game game : games) {
+            try {
+                setGameParameters(this.importStatement, game);
+                this.importStatement.executeUpdate();
+                this.dbConnection.commit();
+            }
+            catch (final SQLException e) {
+                rollback();
+                this.nextGameId = getMaxGameRow() + 1;
+                lostGames++;
+            }
+        }
+        return lostGames;
+    }
+
+    private void rollback() {
+        try {
+            this.dbConnection.rollback();
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Streams the table out in id order. The table keeps no tags, so each game gets
+    // its id as the round and the seven tag roster is otherwise unknown.
     @Override
-    public void persistGame(final Game game) {
-        executePersist(game);
+    public synchronized void exportGames(final PGNWriter writer) throws IOException {
+        readGames(writer::writeGame);
+    }
+
+    // Plays every stored game into the persistence, such as an in-memory book that
+    // is filled from the table when the engine starts.
+    public synchronized void loadGames(final PGNPersistence persistence) throws IOException {
+        readGames(persistence::persistGame);
+    }
+
+    // With a fetch size of Integer.MIN_VALUE Connector/J hands the rows over one at a
+    // time instead of reading the whole result into memory first.
+    private void readGames(final GameHandler gameHandler) throws IOException {
+        try (final Statement gameStatement = this.dbConnection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                                                               ResultSet.CONCUR_READ_ONLY)) {
+            gameStatement.setFetchSize(Integer.MIN_VALUE);
+            try (final ResultSet resultSet = gameStatement.executeQuery(EXPORT_GAMES_SQL)) {
+                while(resultSet.next()) {
+                    final String moves = resultSet.getString(3);
+                    final PGNGameTags tags = new PGNGameTags.TagsBuilder()
+                            .addTag("Round", String.valueOf(resultSet.getInt(1)))
+                            .build();
+                    gameHandler.handle(new ValidGame(tags,
+                            moves == null || moves.isEmpty() ? List.of() : Arrays.asList(moves.split(", ")),
+                            PGNWriter.toResult(resultSet.getString(2))));
+                }
+            }
+        }
+        catch (final SQLException e) {
+            throw new IOException("Reading the game table failed", e);
+        }
+    }
+
+    private interface GameHandler {
+        void handle(Game game) throws IOException;
     }
 
-    
     public Move getNextBestMove(final Board board,
                                 final Player player,
                                 final String gameText) {
@@ -72,6 +257,8 @@ public class MySqlGamePersistence implements PGNPersistence {
                                final Player player,
                                final String gameText) {
 
+        final BookLookupEvent lookupEvent = new BookLookupEvent();
+        lookupEvent.begin();
         String bestMove = "";
         String count = "0";
         try {
@@ -93,7 +280,15 @@ public class MySqlGamePersistence implements PGNPersistence {
             e.printStackTrace();
         }
         System.out.println("\tselected book move = " +bestMove+ " with " +count+ " hits");
-        return PGNUtilities.createMove(board, bestMove);
+        final Move bookMove = PGNUtilities.createMove(board, bestMove);
+        if(lookupEvent.shouldCommit()) {
+            lookupEvent.book = "MySQL";
+            lookupEvent.ply = gameText.isEmpty() ? 0 : gameText.split(",").length;
+            lookupEvent.bookMove = bestMove;
+            lookupEvent.hits = Long.parseLong(count);
+            lookupEvent.commit();
+        }
+        return bookMove;
     }
 
     private void createGameTable() {
@@ -184,18 +379,27 @@ public class MySqlGamePersistence implements PGNPersistence {
     }
 
     private void executePersist(final Game game) {
-        try {
-            final String gameSqlString = "INSERT INTO Game(id, outcome, moves) VALUES(?, ?, ?);";
-            final PreparedStatement gameStatement = this.dbConnection.prepareStatement(gameSqlString);
-            gameStatement.setInt(1, getMaxGameRow() + 1);
-            gameStatement.setString(2, game.getWinner());
-            gameStatement.setString(3, game.getMoves().toString().replaceAll("\\[", "").replaceAll("\\]", ""));
+        try (final PreparedStatement gameStatement = this.dbConnection.prepareStatement(INSERT_GAME_SQL)) {
+            setGameParameters(gameStatement, game);
             gameStatement.executeUpdate();
-            gameStatement.close();
         }
         catch (final SQLException e) {
             e.printStackTrace();
         }
+        finally {
+            // Outside an import every insert reads MAX(ID) again, as other writers may
+            // have added games since.
+            this.nextGameId = -1;
+        }
+    }
+
+    private void setGameParameters(final PreparedStatement gameStatement, final Game game) throws SQLException {
+        if(this.nextGameId < 0) {
+            this.nextGameId = getMaxGameRow() + 1;
+        }
+        gameStatement.setInt(1, this.nextGameId++);
+        gameStatement.setString(2, game.getWinner());
+        gameStatement.setString(3, game.getMoves().toString().replaceAll("\\[", "").replaceAll("\\]", ""));
     }
 
 }
@@ -17,6 +17,15 @@ public class PGNGameTags {
         return this.gameTags.toString();
     }
 
+    // The value of the tag, or null when the game does not have it.
+    public String getTag(final String tagKey) {
+        return this.gameTags.get(tagKey);
+    }
+
+    public Map<String,String> getTags() {
+        return this.gameTags;
+    }
+
     public static class TagsBuilder {
 
         final Map<String,String> gameTags;
@@ -0,0 +1,32 @@
+package pgn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ *
+ *  Flight Recorder event covering the import of one batch of games from a
+ *  PGN file into the game store.
+ *
+ */
+
+@Name("chess.PGNImportBatch")
+@Label("PGN Import Batch")
+@Category({"Chess Engine", "PGN Import"})
+@Description("Parsing and persisting a batch of games from a PGN file")
+@StackTrace(false)
+class PGNImportBatchEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Games Parsed")
+    int gamesParsed;
+
+    @Label("Valid Games")
+    int validGames;
+
+}
@@ -0,0 +1,229 @@
+package pgn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ *
+ *  PGNImportPipeline reads a PGN file into a PGNPersistence in three stages. The
+ *  calling thread cuts the file into the bytes of single games with a PGNScanner,
+ *  a pool of workers parses and validates the games, and one writer hands them to
+ *  the persistence, so that the persistence only ever sees a single thread and
+ *  can batch its writes. The stages are joined by bounded queues: a stage that
+ *  falls behind makes the stage before it wait instead of letting games pile up
+ *  in memory. While it waits the calling thread keeps an eye on the other stages,
+ *  and the first one that fails ends the import with its error instead of leaving
+ *  the rest blocked on a queue nobody drains. The writer reports its progress
+ *  every couple of seconds.
+ *
+ */
+
+final class PGNImportPipeline {
+
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+    private static final long STAGE_CHECK_MILLIS = 100;
+    private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate(0);
+    private static final Game END_OF_GAMES = new InvalidGame(null, "", "*");
+
+    private final File pgnFile;
+    private final PGNPersistence persistence;
+    private final int workerCount;
+    private final BlockingQueue<ByteBuffer> gameTexts;
+    private final BlockingQueue<Game> games;
+    private final List<Future<Void>> stages;
+    private int gameCount;
+    private int validCount;
+    private volatile long bytesRead;
+    private volatile long fileSize;
+    private long startNanos;
+
+    PGNImportPipeline(final File pgnFile,
+                      final PGNPersistence persistence) {
+        this.pgnFile = pgnFile;
+        this.persistence = persistence;
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.gameTexts = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.games = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.stages = new ArrayList<>(this.workerCount + 1);
+    }
+
+    // Runs the import and returns once every game of the file has been persisted.
+    void run() throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(this.workerCount + 1, runnable -> {
+            final Thread thread = new Thread(runnable, "PGN Import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final Future<Void> writer = executor.submit(this::writeGames);
+            this.stages.add(writer);
+            for(int i = 0; i < this.workerCount; i++) {
+                this.stages.add(executor.submit(this::parseGames));
+            }
+            try (final PGNScanner scanner = new PGNScanner(this.pgnFile)) {
+                readGames(scanner);
+            }
+            for(int i = 0; i < this.workerCount; i++) {
+                put(this.gameTexts, END_OF_FILE);
+            }
+            while(true) {
+                try {
+                    writer.get(STAGE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                }
+                catch (final TimeoutException e) {
+                    checkStages();
+                }
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import of " + this.pgnFile + " interrupted");
+        }
+        catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // The number of games read from the file, and how many of them were valid and
+    // stayed persisted once the import was over.
+    int getGameCount() {
+        return this.gameCount;
+    }
+
+    int getValidCount() {
+        return this.validCount;
+    }
+
+    // Reader stage: finds where each game starts and ends.
+    private void readGames(final PGNScanner scanner) throws IOException, InterruptedException, ExecutionException {
+        this.fileSize = scanner.getFileSize();
+        ByteBuffer gameBytes;
+        while((gameBytes = scanner.nextGame()) != null) {
+            this.bytesRead = scanner.getBytesRead();
+            put(this.gameTexts, gameBytes);
+        }
+        this.bytesRead = this.fileSize;
+    }
+
+    // Hands the next stage an item, checking on the stages while the queue is full.
+    private <T> void put(final BlockingQueue<T> queue, final T item) throws InterruptedException, ExecutionException {
+        while(!queue.offer(item, STAGE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkStages();
+        }
+    }
+
+    // Throws the error of a stage that has failed. A stage only finishes early by failing.
+    private void checkStages() throws InterruptedException, ExecutionException {
+        for(final Future<Void> stage : this.stages) {
+            if(stage.isDone()) {
+                stage.get();
+            }
+        }
+    }
+
+    // Worker stage: parses the tags and moves of each game. A game that cannot be
+    // parsed is passed on as invalid, so that one bad game never stops the import.
+    private Void parseGames() throws InterruptedException {
+        ByteBuffer gameBytes;
+        while((gameBytes = this.gameTexts.take()) != END_OF_FILE) {
+            Game game;
+            try {
+                game = PGNScanner.parseGame(gameBytes);
+            }
+            catch (final RuntimeException e) {
+                game = new InvalidGame(new PGNGameTags.TagsBuilder().build(), "", "*");
+            }
+            if(game != null) {
+                this.games.put(game);
+            }
+        }
+        this.games.put(END_OF_GAMES);
+        return null;
+    }
+
+    // Writer stage: persists the valid games until every worker has finished.
+    private Void writeGames() throws InterruptedException {
+        PGNImportBatchEvent batchEvent = beginImportBatch();
+        this.persistence.beginImport();
+        this.startNanos = System.nanoTime();
+        long nextProgressNanos = this.startNanos + PROGRESS_INTERVAL_NANOS;
+        try {
+            int finishedWorkers = 0;
+            while(finishedWorkers < this.workerCount) {
+                final Game game = this.games.take();
+                if(game == END_OF_GAMES) {
+                    finishedWorkers++;
+                    continue;
+                }
+                this.gameCount++;
+                batchEvent.gamesParsed++;
+                if(game.isValid()) {
+                    try {
+                        this.persistence.persistGame(game);
+                        this.validCount++;
+                        batchEvent.validGames++;
+                    }
+                    catch (final RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if(batchEvent.gamesParsed == IMPORT_BATCH_SIZE) {
+                    batchEvent.commit();
+                    batchEvent = beginImportBatch();
+                }
+                if(System.nanoTime() >= nextProgressNanos) {
+                    printProgress();
+                    nextProgressNanos += PROGRESS_INTERVAL_NANOS;
+                }
+            }
+        }
+        finally {
+            printProgress();
+            this.persistence.endImport();
+            this.validCount -= this.persistence.getLostGameCount();
+            if(batchEvent.gamesParsed > 0) {
+                batchEvent.commit();
+            }
+        }
+        return null;
+    }
+
+    private void printProgress() {
+        final double seconds = Math.max(1, System.nanoTime() - this.startNanos) / 1e9;
+        final double megabytes = 1024.0 * 1024.0;
+        System.out.println(String.format("%s: %d games, %.1f of %.1f MB read (%.0f%%), %.0f games/s, %.1f MB/s",
+                this.pgnFile.getName(), this.gameCount, this.bytesRead / megabytes, this.fileSize / megabytes,
+                this.fileSize == 0 ? 100.0 : 100.0 * this.bytesRead / this.fileSize,
+                this.gameCount / seconds, this.bytesRead / megabytes / seconds));
+    }
+
+    // Starts the Flight Recorder event for the next batch of imported games. Its fields
+    // are filled in for every batch, as its game count also tells the writer where a
+    // batch ends, but commit only records the event when a recording has it enabled.
+    private PGNImportBatchEvent beginImportBatch() {
+        final PGNImportBatchEvent batchEvent = new PGNImportBatchEvent();
+        batchEvent.file = this.pgnFile.getName();
+        batchEvent.begin();
+        return batchEvent;
+    }
+
+
+}
@@ -10,4 +10,18 @@ public interface PGNPersistence {
 
     Move getNextBestMove(Board board, Player player, String gameText);
 
+    // Called before the first and after the last game of a PGN file, so that a
+    // persistence can batch the games of the file into fewer, larger writes.
+    default void beginImport() {
+    }
+
+    default void endImport() {
+    }
+
+    // The number of games of the last import that persistGame accepted but that were
+    // lost by the time endImport returned, such as the games of a batch that failed.
+    default int getLostGameCount() {
+        return 0;
+    }
+
 }
@@ -0,0 +1,447 @@
+package pgn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/*
+ *
+ *  PGNScanner memory maps a PGN file and cuts it into games by scanning bytes:
+ *  a game is its tag lines followed by its movetext, up to the line that ends
+ *  with the result. Each game is handed out as a slice of the mapped file, so
+ *  nothing is copied until parseGame turns the slice into tags and moves. The
+ *  file is mapped a window at a time, which keeps memory flat however large
+ *  the file is; a game that runs past the end of a window is found again at the
+ *  start of the next one.
+ *
+ *  A gzip compressed file (.pgn.gz) cannot be mapped, so it is decompressed as
+ *  a stream into windows on the heap instead, which are scanned the same way.
+ *
+ *  parseGame tokenizes the movetext in one pass. Move numbers, comments,
+ *  variations and annotation glyphs are skipped in place, and the only strings
+ *  made are the tag values and the moves themselves.
+ *
+ */
+
+final class PGNScanner implements Closeable {
+
+    private static final long MAPPED_WINDOW_SIZE = 256L << 20;
+    private static final int STREAM_WINDOW_SIZE = 4 << 20;
+    private static final int STREAM_BUFFER_SIZE = 64 << 10;
+    // Games with less movetext than this are left out, as they always have been.
+    private static final int MIN_MOVE_TEXT_LENGTH = 80;
+    private static final int MAX_TOKEN_LENGTH = 32;
+
+    private final long fileSize;
+    private final FileChannel channel;
+    private final CountingInputStream fileInput;
+    private final InputStream stream;
+    private ByteBuffer window;
+    private long windowStart;
+    private int position;
+    private boolean isEndOfStream;
+
+    PGNScanner(final File pgnFile) throws IOException {
+        this.fileSize = pgnFile.length();
+        if(isGzip(pgnFile)) {
+            this.channel = null;
+            this.fileInput = new CountingInputStream(new FileInputStream(pgnFile));
+            this.stream = new GZIPInputStream(this.fileInput, STREAM_BUFFER_SIZE);
+            this.window = ByteBuffer.allocate(0);
+            refill(0);
+        }
+        else {
+            this.channel = FileChannel.open(pgnFile.toPath(), StandardOpenOption.READ);
+            this.fileInput = null;
+            this.stream = null;
+            this.window = map(0);
+        }
+    }
+
+    // The next game of the file as a slice from its first tag to the end of its
+    // result, or null at the end of the file. A game without a result at the end
+    // of the file is dropped.
+    ByteBuffer nextGame() throws IOException {
+        int gameStart = this.position;
+        boolean hasMoveText = false;
+        while(true) {
+            int lineEnd = indexOf(this.window, (byte) '\n', this.position);
+            if(lineEnd < 0) {
+                if(hasMoreInput()) {
+                    refill(gameStart);
+                    this.position -= gameStart;
+                    gameStart = 0;
+                    continue;
+                }
+                if(this.position >= this.window.limit()) {
+                    return null;
+                }
+                lineEnd = this.window.limit();
+            }
+            final int lineStart = this.position;
+            this.position = Math.min(lineEnd + 1, this.window.limit());
+            final int first = skipWhiteSpace(this.window, lineStart, lineEnd);
+            final int last = trimWhiteSpace(this.window, first, lineEnd);
+            if(first == last) {
+                continue;
+            }
+            if(this.window.get(first) == '[' && this.window.get(last - 1) == ']') {
+                // Tags after movetext without a result start the next game.
+                if(hasMoveText) {
+                    gameStart = lineStart;
+                    hasMoveText = false;
+                }
+            }
+            else {
+                hasMoveText = true;
+                if(isEndOfGame(this.window, first, last)) {
+                    return this.window.slice(gameStart, last - gameStart);
+                }
+            }
+        }
+    }
+
+    // How far into the file the scanner has read, to compare with getFileSize.
+    // For a compressed file both count compressed bytes.
+    long getBytesRead() {
+        return this.channel != null ? this.windowStart + this.position : this.fileInput.getCount();
+    }
+
+    long getFileSize() {
+        return this.fileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.channel != null) {
+            this.channel.close();
+        }
+        else {
+            this.stream.close();
+        }
+    }
+
+    private boolean hasMoreInput() {
+        return this.channel != null ? this.windowStart + this.window.limit() < this.fileSize : !this.isEndOfStream;
+    }
+
+    // Moves the window on so that it starts at the given offset of the current one.
+    // A stream window grows when the bytes kept from the old one fill half of it.
+    private void refill(final int offset) throws IOException {
+        if(this.channel != null) {
+            if(offset == 0) {
+                throw new IOException("Game at byte " + this.windowStart + " is longer than " + MAPPED_WINDOW_SIZE + " bytes");
+            }
+            this.window = map(this.windowStart + offset);
+            this.windowStart += offset;
+            return;
+        }
+        final int kept = this.window.limit() - offset;
+        int capacity = STREAM_WINDOW_SIZE;
+        while(capacity < kept * 2) {
+            capacity *= 2;
+        }
+        final byte[] bytes = new byte[capacity];
+        this.window.get(offset, bytes, 0, kept);
+        int filled = kept;
+        while(filled < capacity) {
+            final int read = this.stream.read(bytes, filled, capacity - filled);
+            if(read < 0) {
+                this.isEndOfStream = true;
+                break;
+            }
+            filled += read;
+        }
+        // A new array each time, as the games handed out still point into the old one.
+        this.window = ByteBuffer.wrap(bytes, 0, filled);
+        this.windowStart += offset;
+    }
+
+    private ByteBuffer map(final long start) throws IOException {
+        return this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAPPED_WINDOW_SIZE, this.fileSize - start));
+    }
+
+    private static boolean isGzip(final File pgnFile) throws IOException {
+        try (final InputStream input = new FileInputStream(pgnFile)) {
+            return input.read() == 0x1f && input.read() == 0x8b;
+        }
+    }
+
+    /*
+     *
+     *  Turns the bytes of one game into a Game. Returns null for a game with too
+     *  little movetext, and an InvalidGame when the movetext holds something that
+     *  cannot be a move.
+     *
+     */
+
+    static Game parseGame(final ByteBuffer gameBytes) {
+        final PGNGameTags.TagsBuilder tagsBuilder = new PGNGameTags.TagsBuilder();
+        final int limit = gameBytes.limit();
+        int index = skipWhiteSpace(gameBytes, 0, limit);
+        while(index < limit && gameBytes.get(index) == '[') {
+            int lineEnd = indexOf(gameBytes, (byte) '\n', index);
+            lineEnd = lineEnd < 0 ? limit : lineEnd;
+            addTag(tagsBuilder, gameBytes, index + 1, trimWhiteSpace(gameBytes, index, lineEnd) - 1);
+            index = skipWhiteSpace(gameBytes, lineEnd, limit);
+        }
+        final PGNGameTags tags = tagsBuilder.build();
+        if(limit - index <= MIN_MOVE_TEXT_LENGTH) {
+            return null;
+        }
+
+        final int moveTextStart = index;
+        final List<String> moves = new ArrayList<>();
+        final byte[] token = new byte[MAX_TOKEN_LENGTH];
+        String outcome = "*";
+        int variationDepth = 0;
+        while(index < limit) {
+            final byte b = gameBytes.get(index);
+            // A } without its { is left over from a broken comment and is skipped like
+            // white space. It ends a token, so it has to be stepped over here.
+            if(isWhiteSpace(b) || b == '}') {
+                index++;
+            }
+            else if(b == '{') {
+                final int commentEnd = indexOf(gameBytes, (byte) '}', index);
+                index = commentEnd < 0 ? limit : commentEnd + 1;
+            }
+            else if(b == ';') {
+                final int commentEnd = indexOf(gameBytes, (byte) '\n', index);
+                index = commentEnd < 0 ? limit : commentEnd + 1;
+            }
+            else if(b == '(') {
+                variationDepth++;
+                index++;
+            }
+            else if(b == ')') {
+                variationDepth--;
+                index++;
+            }
+            else {
+                int tokenStart = index;
+                while(index < limit && !isTokenEnd(gameBytes.get(index))) {
+                    index++;
+                }
+                if(variationDepth > 0 || gameBytes.get(tokenStart) == '$') {
+                    continue;
+                }
+                if(isResult(gameBytes, tokenStart, index)) {
+                    outcome = toResult(gameBytes, tokenStart, index);
+                    continue;
+                }
+                // Move numbers such as 12. and 12... may run straight into the move.
+                if(isDigit(gameBytes.get(tokenStart)) && !isZeroCastle(gameBytes, tokenStart, index)) {
+                    while(tokenStart < index && isDigit(gameBytes.get(tokenStart))) {
+                        tokenStart++;
+                    }
+                    if(tokenStart == index || gameBytes.get(tokenStart) != '.') {
+                        return invalidGame(tags, gameBytes, moveTextStart, outcome);
+                    }
+                    while(tokenStart < index && gameBytes.get(tokenStart) == '.') {
+                        tokenStart++;
+                    }
+                    if(tokenStart == index) {
+                        continue;
+                    }
+                }
+                int tokenEnd = index;
+                while(tokenEnd > tokenStart && (gameBytes.get(tokenEnd - 1) == '!' || gameBytes.get(tokenEnd - 1) == '?')) {
+                    tokenEnd--;
+                }
+                final int length = tokenEnd - tokenStart;
+                if(length == 0 || length > MAX_TOKEN_LENGTH || !isMoveStart(gameBytes.get(tokenStart))) {
+                    return invalidGame(tags, gameBytes, moveTextStart, outcome);
+                }
+                toArray(gameBytes, tokenStart, tokenEnd, token);
+                if(token[0] == '0') {
+                    for(int i = 0; i < length; i++) {
+                        token[i] = token[i] == '0' ? (byte) 'O' : token[i];
+                    }
+                }
+                moves.add(new String(token, 0, length, StandardCharsets.ISO_8859_1));
+            }
+        }
+        if(moves.isEmpty()) {
+            return invalidGame(tags, gameBytes, moveTextStart, outcome);
+        }
+        return new ValidGame(tags, Collections.unmodifiableList(moves), outcome);
+    }
+
+    // [Name "Value"] with the brackets already stripped.
+    private static void addTag(final PGNGameTags.TagsBuilder tagsBuilder,
+                               final ByteBuffer bytes,
+                               final int start,
+                               final int end) {
+        int nameEnd = start;
+        while(nameEnd < end && !isWhiteSpace(bytes.get(nameEnd))) {
+            nameEnd++;
+        }
+        final int valueStart = indexOf(bytes, (byte) '"', nameEnd);
+        int valueEnd = end;
+        while(valueEnd > valueStart && bytes.get(valueEnd - 1) != '"') {
+            valueEnd--;
+        }
+        if(valueStart < 0 || valueStart >= end || valueEnd - 1 <= valueStart) {
+            return;
+        }
+        tagsBuilder.addTag(decode(bytes, start, nameEnd), unescape(decode(bytes, valueStart + 1, valueEnd - 1)));
+    }
+
+    // Tag values escape a quote or a backslash with a backslash, as PGNWriter writes them.
+    private static String unescape(final String tagValue) {
+        if(tagValue.indexOf('\\') < 0) {
+            return tagValue;
+        }
+        final StringBuilder builder = new StringBuilder(tagValue.length());
+        for(int i = 0; i < tagValue.length(); i++) {
+            final char c = tagValue.charAt(i);
+            if(c == '\\' && i + 1 < tagValue.length()) {
+                builder.append(tagValue.charAt(++i));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Game invalidGame(final PGNGameTags tags,
+                                    final ByteBuffer bytes,
+                                    final int moveTextStart,
+                                    final String outcome) {
+        return new InvalidGame(tags, decode(bytes, moveTextStart, bytes.limit()), outcome);
+    }
+
+    private static String decode(final ByteBuffer bytes, final int start, final int end) {
+        final byte[] array = new byte[end - start];
+        bytes.get(start, array);
+        return new String(array, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toArray(final ByteBuffer bytes, final int start, final int end, final byte[] array) {
+        bytes.get(start, array, 0, end - start);
+        return array;
+    }
+
+    private static int indexOf(final ByteBuffer bytes, final byte value, final int from) {
+        for(int i = from; i < bytes.limit(); i++) {
+            if(bytes.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhiteSpace(final ByteBuffer bytes, int from, final int to) {
+        while(from < to && isWhiteSpace(bytes.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimWhiteSpace(final ByteBuffer bytes, final int from, int to) {
+        while(to > from && isWhiteSpace(bytes.get(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    // A game ends with the line that ends with its result.
+    private static boolean isEndOfGame(final ByteBuffer bytes, final int first, final int last) {
+        return endsWith(bytes, first, last, "1-0") || endsWith(bytes, first, last, "0-1") ||
+               endsWith(bytes, first, last, "1/2-1/2") || endsWith(bytes, first, last, "*");
+    }
+
+    private static boolean isResult(final ByteBuffer bytes, final int start, final int end) {
+        final int length = end - start;
+        return (length == 3 || length == 7 || length == 1) && isEndOfGame(bytes, start, end);
+    }
+
+    private static String toResult(final ByteBuffer bytes, final int start, final int end) {
+        switch(end - start) {
+            case 1:  return "*";
+            case 7:  return "1/2-1/2";
+            default: return bytes.get(start) == '1' ? "1-0" : "0-1";
+        }
+    }
+
+    private static boolean endsWith(final ByteBuffer bytes, final int first, final int last, final String suffix) {
+        if(last - first < suffix.length()) {
+            return false;
+        }
+        for(int i = 0; i < suffix.length(); i++) {
+            if(bytes.get(last - suffix.length() + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Some files write castling with zeros, 0-0 and 0-0-0.
+    private static boolean isZeroCastle(final ByteBuffer bytes, final int start, final int end) {
+        return end - start >= 3 && bytes.get(start) == '0' && bytes.get(start + 1) == '-' && bytes.get(start + 2) == '0';
+    }
+
+    private static boolean isMoveStart(final byte b) {
+        return (b >= 'a' && b <= 'h') || b == 'K' || b == 'Q' || b == 'R' || b == 'B' || b == 'N' || b == 'O' || b == '0';
+    }
+
+    private static boolean isTokenEnd(final byte b) {
+        return isWhiteSpace(b) || b == '{' || b == '}' || b == '(' || b == ')' || b == ';';
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhiteSpace(final byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+
+
+    // Counts the compressed bytes read from the file, for progress reports.
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+
+        CountingInputStream(final InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if(b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            final int read = super.read(bytes, offset, length);
+            if(read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+    }
+
+}
@@ -4,333 +4,199 @@ import board.Board;
 import board.BoardUtils;
 import board.Move;
 import gui.Table.MoveLog;
+import pieces.Piece;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static board.Move.MoveFactory;
 
 public class PGNUtilities {
 
-    private static final Pattern PGN_PATTERN = Pattern.compile("\\[(\\w+)\\s+\"(.*?)\"\\]$");
-    private static final Pattern KING_SIDE_CASTLE = Pattern.compile("O-O#?\\+?");
-    private static final Pattern QUEEN_SIDE_CASTLE = Pattern.compile("O-O-O#?\\+?");
-    private static final Pattern PLAIN_PAWN_MOVE = Pattern.compile("^([a-h][0-8])(\\+)?(#)?$");
-    private static final Pattern PAWN_ATTACK_MOVE = Pattern.compile("(^[a-h])(x)([a-h][0-8])(\\+)?(#)?$");
-    private static final Pattern PLAIN_MAJOR_MOVE = Pattern.compile("^(B|N|R|Q|K)([a-h]|[1-8])?([a-h][0-8])(\\+)?(#)?$");
-    private static final Pattern MAJOR_ATTACK_MOVE = Pattern.compile("^(B|N|R|Q|K)([a-h]|[1-8])?(x)([a-h][0-8])(\\+)?(#)?$");
-    private static final Pattern PLAIN_PAWN_PROMOTION_MOVE = Pattern.compile("(.*?)=(.*?)");
-    private static final Pattern ATTACK_PAWN_PROMOTION_MOVE = Pattern.compile("(.*?)x(.*?)=(.*?)");
-
     private PGNUtilities() {
         throw new RuntimeException("Not Instantiable!");
     }
 
     public static void persistPGNFile(final File pgnFile) throws IOException {
-
-        int count = 0;
-        int validCount = 0;
-
-        try (final BufferedReader br = new BufferedReader(new FileReader(pgnFile))) {
-            String line;
-            PGNGameTags.TagsBuilder tagsBuilder = new PGNGameTags.TagsBuilder();
-            StringBuilder gameTextBuilder = new StringBuilder();
-            
-            while((line = br.readLine()) != null) {
-//            	System.out.println(line);
-                if (!line.isEmpty()) {
-                    if (isTag(line)) {
-                        final Matcher matcher = PGN_PATTERN.matcher(line);
-                        if (matcher.find()) {
-                            tagsBuilder.addTag(matcher.group(1), matcher.group(2));
-                        }
-                    }
-                    else if (isEndOfGame(line)) {
-                    	System.out.println("HERE");
-                        final String[] ending = line.split(" ");
-                        final String outcome = ending[ending.length - 1];
-                        gameTextBuilder.append(line.replace(outcome, "")).append(" ");
-                        final String gameText = gameTextBuilder.toString().trim();
-                        
-                        if(!gameText.isEmpty() && gameText.length() > 80) {
-                            final Game game = GameFactory.createGame(tagsBuilder.build(), gameText, outcome);
-                            
-                            System.out.println("(" +(++count)+") Finished parsing " +game+ " count = " + (++count));
-                            if(game.isValid()) {
-                                MySqlGamePersistence.get().persistGame(game);
-                                validCount++;
-                            }
-                        }
-                        
-                        gameTextBuilder = new StringBuilder();
-                        tagsBuilder = new PGNGameTags.TagsBuilder();
-                    }
-                    else {
-                        gameTextBuilder.append(line).append(" ");
-                        //System.out.println(gameTextBuilder.toString());
-//                        List<String> something = createMovesFromPGN(gameTextBuilder.toString());
-//                        for(String thing : something) {
-//                        	System.out.println(thing);
-//                        }
-      
-                    }
-                }
-            }
-            
-            
-            
-            
-            br.readLine();
-//            System.out.println("------");
-//            System.out.println(gameTextBuilder.toString());
-//            System.out.println("------");
+        persistPGNFile(pgnFile, MySqlGamePersistence.get());
+    }
+
+    // Reads every game of the PGN file into the given persistence, such as the
+    // MySQL database or an in-memory opening book. The games are parsed in
+    // parallel, see PGNImportPipeline.
+    public static void persistPGNFile(final File pgnFile,
+                                      final PGNPersistence persistence) throws IOException {
+        final PGNImportPipeline pipeline = new PGNImportPipeline(pgnFile, persistence);
+        pipeline.run();
+        System.out.println("Finished building book from pgn file: " + pgnFile + " Parsed " +pipeline.getGameCount()+ " games, valid = " +pipeline.getValidCount());
+    }
+
+    // Writes every game of the persistence to a PGN file, gzipped when the name
+    // ends in .gz, so that a game store can be read back in on another machine
+    // with persistPGNFile. The games are streamed, one at a time.
+    public static void exportPGNFile(final File pgnFile,
+                                     final ExportablePersistence persistence) throws IOException {
+        try (final PGNWriter writer = new PGNWriter(pgnFile)) {
+            persistence.exportGames(writer);
+            System.out.println("Finished exporting pgn file: " + pgnFile + " Wrote " +writer.getGameCount()+ " games");
         }
-        
-       
-        
-        
-   
-        System.out.println("Finished building book from pgn file: " + pgnFile + " Parsed " +count+ " games, valid = " +validCount);
     }
-    
-   
+
+    // Adds the game played on the board to the end of the PGN file. The game is
+    // still going as far as the file knows, so its result is *.
     public static void writeGameToPGNFile(final File pgnFile,
                                           final MoveLog moveLog) throws IOException {
-        final StringBuilder builder = new StringBuilder();
-        builder.append(calculateEventString()).append("\n");
-        builder.append(calculateDateString()).append("\n");
-        builder.append(calculatePlyCountString(moveLog)).append("\n");
-        for(final Move move : moveLog.getMoves()) {
-            builder.append(move.toString()).append(" ");
-        }
-        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pgnFile, true)))) {
-            writer.write(builder.toString());
+        final PGNGameTags tags = new PGNGameTags.TagsBuilder()
+                .addTag("Event", "Chess Engine AI Game")
+                .addTag("Date", new SimpleDateFormat("yyyy.MM.dd").format(new Date()))
+                .addTag("PlyCount", String.valueOf(moveLog.size()))
+                .build();
+        try (final PGNWriter writer = new PGNWriter(pgnFile, true)) {
+            writer.writeGame(tags, SANUtilities.toSAN(moveLog.getMoves()), "*");
         }
     }
 
-    private static String calculateEventString() {
-        return "[Event \"" +" Chess Engine AI Game"+ "\"]";
-    }
+    /*
+     *
+     *  Decodes a move in standard algebraic notation in one pass over the text: an
+     *  optional piece letter, optional origin file and rank, an optional x, the
+     *  destination and an optional promotion, followed by any of + # ! ?. The move
+     *  is then looked up among the legal moves of the position in a single pass.
+     *  When the text fits more than one move, as when a second knight that could
+     *  reach the square is pinned, only the move that is actually legal is kept.
+     *  The engine always promotes to a queen, whatever piece the text names.
+     *
+     */
 
-    private static String calculateDateString() {
-        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd");
-        return "[Date \"" + dateFormat.format(new Date()) + "\"]";
-    }
-
-    private static String calculatePlyCountString(final MoveLog moveLog) {
-        return "[PlyCount \"" +moveLog.size() + "\"]";
-    }
-
-    public static List<String> processMoveText(final String gameText) throws ParsePGNException {
-        return gameText.isEmpty() ? Collections.emptyList() : createMovesFromPGN(gameText);
-    }
+    public static Move createMove(final Board board,
+                                  final String pgnText) {
 
-    private static List<String> createMovesFromPGN(final String pgnText) {
-        if(!pgnText.startsWith("1.")) {
-            return Collections.emptyList();
+        int end = pgnText.length();
+        while(end > 0 && isSuffix(pgnText.charAt(end - 1))) {
+            end--;
         }
-        final List<String> sanitizedMoves = new LinkedList<>(Arrays.asList(
-                removeParenthesis(pgnText).replaceAll(Pattern.quote("$") + "[0-9]+", "").replaceAll("[0-9]+\\s*\\.\\.\\.", "")
-                        .split("\\s*[0-9]+" + Pattern.quote("."))));
-        final List<String> processedData = removeEmptyText(sanitizedMoves);
-        final String[] moveRows = processedData.toArray(new String[processedData.size()]);
-        //final ImmutableList.Builder<String> moves = new Builder<>();
-        
-        final List<String> moves = new ArrayList<String>();
-        for(final String row : moveRows) {
-            final String[] moveContent = removeWhiteSpace(row).split(" ");
-            if(moveContent.length == 1) {
-                moves.add(moveContent[0]);
-            } else if(moveContent.length == 2) {
-                moves.add(moveContent[0]);
-                moves.add(moveContent[1]);
-            } else {
-                System.out.println("problem reading: " +pgnText+ " skipping!");
-                return Collections.emptyList();
-            }
+        if(end < 2) {
+            return MoveFactory.getNullMove();
         }
-       
-        return Collections.unmodifiableList(moves);
-    }
-
-    private static List<String> removeEmptyText(final List<String> moves) {
-        final List<String> result = new ArrayList<>();
-        for(final String moveText : moves) {
-            if(!moveText.isEmpty()) {
-                result.add(moveText);
-            }
+        if(pgnText.charAt(0) == 'O' || pgnText.charAt(0) == '0') {
+            return createCastleMove(board, pgnText, end);
         }
-        return result;
-    }
-
-    private static String removeWhiteSpace(final String row) {
-        return row.trim().replaceAll("\\s+", " ");
-    }
-
-    private static boolean isTag(final String gameText) {
-        return gameText.startsWith("[") && gameText.endsWith("]");
-    }
 
-    private static boolean isEndOfGame(final String gameText) {
-        return gameText.endsWith("1-0") || gameText.endsWith("0-1") ||
-               gameText.endsWith("1/2-1/2") || gameText.endsWith("*");
-    }
+        int index = 0;
+        final Piece.PieceType pieceType = toPieceType(pgnText.charAt(0));
+        if(pieceType != Piece.PieceType.PAWN) {
+            index++;
+        }
+        if(pieceType == Piece.PieceType.PAWN && end > 2 && toPieceType(pgnText.charAt(end - 1)) != Piece.PieceType.PAWN) {
+            end -= pgnText.charAt(end - 2) == '=' ? 2 : 1;
+        }
+        if(end - index < 2) {
+            return MoveFactory.getNullMove();
+        }
+        final int destinationFile = pgnText.charAt(end - 2) - 'a';
+        final int destinationRank = pgnText.charAt(end - 1) - '1';
+        if(!isOnBoard(destinationFile) || !isOnBoard(destinationRank)) {
+            return MoveFactory.getNullMove();
+        }
 
-    private static String removeParenthesis(final String gameText) {
-        int parenthesisCounter=0;
-        final StringBuilder builder = new StringBuilder();
-        for (final char c : gameText.toCharArray()) {
-            if (c == '(' || c == '{' ) {
-                parenthesisCounter++;
+        int fromFile = -1;
+        int fromRank = -1;
+        for(; index < end - 2; index++) {
+            final char c = pgnText.charAt(index);
+            if(c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
             }
-            if (c == ')' || c == '}' ) {
-                parenthesisCounter--;
+            else if(c >= '1' && c <= '8') {
+                fromRank = c - '1';
             }
-            if (!(c == '(' || c == '{' || c == ')' || c == '}') && parenthesisCounter == 0) {
-                builder.append(c);
+            else if(c != 'x' && c != '-') {
+                return MoveFactory.getNullMove();
             }
         }
-        return builder.toString();
-    }
-
-    public static Move createMove(final Board board,
-                                  final String pgnText) {
-
-        final Matcher kingSideCastleMatcher = KING_SIDE_CASTLE.matcher(pgnText);
-        final Matcher queenSideCastleMatcher = QUEEN_SIDE_CASTLE.matcher(pgnText);
-        final Matcher plainPawnMatcher = PLAIN_PAWN_MOVE.matcher(pgnText);
-        final Matcher attackPawnMatcher = PAWN_ATTACK_MOVE.matcher(pgnText);
-        final Matcher pawnPromotionMatcher = PLAIN_PAWN_PROMOTION_MOVE.matcher(pgnText);
-        final Matcher attackPawnPromotionMatcher = ATTACK_PAWN_PROMOTION_MOVE.matcher(pgnText);
-        final Matcher plainMajorMatcher = PLAIN_MAJOR_MOVE.matcher(pgnText);
-        final Matcher attackMajorMatcher = MAJOR_ATTACK_MOVE.matcher(pgnText);
-
-        int currentCoordinate;
-        int destinationCoordinate;
-
-        if(kingSideCastleMatcher.matches()) {
-            return extractCastleMove(board, "O-O");
-        } 
-        else if (queenSideCastleMatcher.matches()) {
-            return extractCastleMove(board, "O-O-O");
-        } 
-        else if(plainPawnMatcher.matches()) {
-            final String destinationSquare = plainPawnMatcher.group(1);
-            destinationCoordinate = BoardUtils.getCoordinateAtPosition(destinationSquare);
-            currentCoordinate = deriveCurrentCoordinate(board, "P", destinationSquare, "");
-            return MoveFactory.createMove(board, currentCoordinate, destinationCoordinate);
-        } 
-        else if(attackPawnMatcher.matches()) {
-            final String destinationSquare = attackPawnMatcher.group(3);
-            destinationCoordinate = BoardUtils.getCoordinateAtPosition(destinationSquare);
-            final String disambiguationFile = attackPawnMatcher.group(1) != null ? attackPawnMatcher.group(1) : "";
-            currentCoordinate = deriveCurrentCoordinate(board, "P", destinationSquare, disambiguationFile);
-            return MoveFactory.createMove(board, currentCoordinate, destinationCoordinate);
-        } 
-        else if (attackPawnPromotionMatcher.matches()) {
-            final String destinationSquare = attackPawnPromotionMatcher.group(2);
-            final String disambiguationFile = attackPawnPromotionMatcher.group(1) != null ? attackPawnPromotionMatcher.group(1) : "";
-            destinationCoordinate = BoardUtils.getCoordinateAtPosition(destinationSquare);
-            currentCoordinate = deriveCurrentCoordinate(board, "P", destinationSquare, disambiguationFile);
-            return MoveFactory.createMove(board, currentCoordinate, destinationCoordinate);
-        } 
-        else if(pawnPromotionMatcher.find()) {
-            final String destinationSquare = pawnPromotionMatcher.group(1);
-            destinationCoordinate = BoardUtils.getCoordinateAtPosition(destinationSquare);
-            currentCoordinate = deriveCurrentCoordinate(board, "P", destinationSquare, "");
-            return MoveFactory.createMove(board, currentCoordinate, destinationCoordinate);
-        } 
-        else if (plainMajorMatcher.find()) {
-            final String destinationSquare = plainMajorMatcher.group(3);
-            destinationCoordinate = BoardUtils.getCoordinateAtPosition(destinationSquare);
-            final String disambiguationFile = plainMajorMatcher.group(2) != null ? plainMajorMatcher.group(2) : "";
-            currentCoordinate = deriveCurrentCoordinate(board, plainMajorMatcher.group(1), destinationSquare, disambiguationFile);
-            return MoveFactory.createMove(board, currentCoordinate, destinationCoordinate);
-        } 
-        else if(attackMajorMatcher.find()) {
-            final String destinationSquare = attackMajorMatcher.group(4);
-            destinationCoordinate = BoardUtils.getCoordinateAtPosition(destinationSquare);
-            final String disambiguationFile = attackMajorMatcher.group(2) != null ? attackMajorMatcher.group(2) : "";
-            currentCoordinate = deriveCurrentCoordinate(board, attackMajorMatcher.group(1), destinationSquare, disambiguationFile);
-            return MoveFactory.createMove(board, currentCoordinate, destinationCoordinate);
+        // A pawn that does not capture stays on its file.
+        if(pieceType == Piece.PieceType.PAWN && fromFile < 0) {
+            fromFile = destinationFile;
         }
 
-        return MoveFactory.getNullMove();
-
-    }
-
-    private static Move extractCastleMove(final Board board,
-                                          final String castleMove) {
-    	boolean castleMoveMaybe = false;
-        for (final Move move : board.currentPlayer().getLegalMoves()) {
-            if (move.isCastlingMove() && move.toString().equals(castleMove)) {
-            	//System.out.println("CASTLE HERE");
-                return move;
+        final int destinationCoordinate = (BoardUtils.NUM_TILES_PER_ROW - 1 - destinationRank) * BoardUtils.NUM_TILES_PER_ROW + destinationFile;
+        Move found = MoveFactory.getNullMove();
+        List<Move> ambiguousMoves = null;
+        for(final Move move : board.currentPlayer().getLegalMoves()) {
+            final int currentCoordinate = move.getCurrentCoordinate();
+            if(move.getDestinationCoordinate() == destinationCoordinate &&
+               move.getMovedPiece().getPieceType() == pieceType &&
+               !move.isCastlingMove() &&
+               (fromFile < 0 || currentCoordinate % BoardUtils.NUM_TILES_PER_ROW == fromFile) &&
+               (fromRank < 0 || BoardUtils.NUM_TILES_PER_ROW - 1 - currentCoordinate / BoardUtils.NUM_TILES_PER_ROW == fromRank)) {
+                if(found == MoveFactory.getNullMove()) {
+                    found = move;
+                }
+                else {
+                    if(ambiguousMoves == null) {
+                        ambiguousMoves = new ArrayList<>();
+                        ambiguousMoves.add(found);
+                    }
+                    ambiguousMoves.add(move);
+                }
             }
-            //System.out.println(move.toString());
         }
-        
-        //System.out.println("CASTLE DIDN'T GO THROUGH\nmovetoString is " + castleMoveMaybe);
-        //System.out.println(castleMove);
-        return MoveFactory.getNullMove();
+        return ambiguousMoves == null ? found : selectLegalMove(board, ambiguousMoves);
     }
 
-    private static int deriveCurrentCoordinate(final Board board,
-                                               final String movedPiece,
-                                               final String destinationSquare,
-                                               final String disambiguationFile) throws RuntimeException {
-        final List<Move> currentCandidates = new ArrayList<>();
-        final int destinationCoordinate =  BoardUtils.getCoordinateAtPosition(destinationSquare);
+    private static Move createCastleMove(final Board board,
+                                         final String pgnText,
+                                         final int end) {
+        final int destinationFile;
+        if(end == 3) {
+            destinationFile = 6;
+        }
+        else if(end == 5) {
+            destinationFile = 2;
+        }
+        else {
+            return MoveFactory.getNullMove();
+        }
         for (final Move move : board.currentPlayer().getLegalMoves()) {
-            if (move.getDestinationCoordinate() == destinationCoordinate && move.getMovedPiece().toString().equals(movedPiece)) {
-                currentCandidates.add(move);
+            if (move.isCastlingMove() && move.getDestinationCoordinate() % BoardUtils.NUM_TILES_PER_ROW == destinationFile) {
+                return move;
             }
         }
-
-        if(currentCandidates.size() == 0) {
-            return -1;
-        }
-
-        return currentCandidates.size() == 1
-                ? currentCandidates.iterator().next().getCurrentCoordinate()
-                : extractFurther(currentCandidates, movedPiece, disambiguationFile);
-
+        return MoveFactory.getNullMove();
     }
 
-    private static int extractFurther(final List<Move> candidateMoves,
-                                      final String movedPiece,
-                                      final String disambiguationFile) {
-
-        final List<Move> currentCandidates = new ArrayList<>();
-
+    // Of several moves that fit the text, the one that does not leave the king in check.
+    private static Move selectLegalMove(final Board board,
+                                        final List<Move> candidateMoves) {
+        Move legalMove = MoveFactory.getNullMove();
         for(final Move move : candidateMoves) {
-            if(move.getMovedPiece().getPieceType().toString().equals(movedPiece)) {
-                currentCandidates.add(move);
-            }
-        }
-
-        if(currentCandidates.size() == 1) {
-            return currentCandidates.iterator().next().getCurrentCoordinate();
-        }
-
-        final List<Move> candidatesRefined = new ArrayList<>();
-
-        for (final Move move : currentCandidates) {
-            final String pos = BoardUtils.getPositionAtCoordinate(move.getCurrentCoordinate());
-            if (pos.contains(disambiguationFile)) {
-                candidatesRefined.add(move);
+            if(board.currentPlayer().makeMove(move).getMoveStatus().isDone()) {
+                if(legalMove != MoveFactory.getNullMove()) {
+                    return MoveFactory.getNullMove();
+                }
+                legalMove = move;
             }
         }
+        return legalMove;
+    }
 
-        if(candidatesRefined.size() == 1) {
-            return candidatesRefined.iterator().next().getCurrentCoordinate();
+    private static Piece.PieceType toPieceType(final char c) {
+        switch(c) {
+            case 'N': return Piece.PieceType.KNIGHT;
+            case 'B': return Piece.PieceType.BISHOP;
+            case 'R': return Piece.PieceType.ROOK;
+            case 'Q': return Piece.PieceType.QUEEN;
+            case 'K': return Piece.PieceType.KING;
+            default:  return Piece.PieceType.PAWN;
         }
+    }
 
-        return -1;
+    private static boolean isSuffix(final char c) {
+        return c == '+' || c == '#' || c == '!' || c == '?';
+    }
 
+    private static boolean isOnBoard(final int fileOrRank) {
+        return fileOrRank >= 0 && fileOrRank < BoardUtils.NUM_TILES_PER_ROW;
     }
 
 }
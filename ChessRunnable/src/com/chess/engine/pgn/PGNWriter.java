@@ -0,0 +1,161 @@
+package pgn;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ *
+ *  PGNWriter writes games to a PGN file one at a time through a single buffered
+ *  stream, so that exporting a game store needs no more memory than one game no
+ *  matter how many games it holds. A file whose name ends in .gz is compressed
+ *  on the way out, which PGNScanner reads back without being told.
+ *
+ *  Every game gets the seven tag roster in its standard order, with "?" for
+ *  the tags that are unknown, followed by its other tags, the numbered moves
+ *  wrapped to lines of at most 80 characters and the result. The moves of a
+ *  game with a FEN tag are numbered on from that position.
+ *
+ */
+
+public class PGNWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 80;
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+
+    private final Writer writer;
+    private final StringBuilder line;
+    private int gameCount;
+
+    public PGNWriter(final File pgnFile) throws IOException {
+        this(pgnFile, false);
+    }
+
+    // Adds the games to the end of the file when append is true. Appending to a
+    // gzip file starts a new gzip member, which GZIPInputStream reads on through.
+    public PGNWriter(final File pgnFile,
+                     final boolean append) throws IOException {
+        OutputStream outputStream = new FileOutputStream(pgnFile, append);
+        if(pgnFile.getName().endsWith(".gz")) {
+            outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.line = new StringBuilder(MAX_LINE_LENGTH + 16);
+    }
+
+    public void writeGame(final Game game) throws IOException {
+        writeGame(game.getTags(), game.getMoves(), toResult(game.getWinner()));
+    }
+
+    // Writes one game. The result is the PGN result token: 1-0, 0-1, 1/2-1/2 or *.
+    public void writeGame(final PGNGameTags tags,
+                          final List<String> moves,
+                          final String result) throws IOException {
+        for(final String tagKey : SEVEN_TAG_ROSTER) {
+            final String tagValue = tagKey.equals("Result") ? result : tags.getTag(tagKey);
+            writeTag(tagKey, tagValue != null ? tagValue : tagKey.equals("Date") ? "????.??.??" : "?");
+        }
+        final List<String> otherTags = new ArrayList<>(tags.getTags().keySet());
+        otherTags.removeAll(List.of(SEVEN_TAG_ROSTER));
+        Collections.sort(otherTags);
+        for(final String tagKey : otherTags) {
+            writeTag(tagKey, tags.getTag(tagKey));
+        }
+        this.writer.write('\n');
+        this.line.setLength(0);
+        final int firstPly = calculateFirstPly(tags.getTag("FEN"));
+        for(int i = 0; i < moves.size(); i++) {
+            final int ply = firstPly + i;
+            if(ply % 2 == 0) {
+                writeToken((ply / 2 + 1) + ".");
+            }
+            else if(i == 0) {
+                writeToken((ply / 2 + 1) + "...");
+            }
+            writeToken(moves.get(i));
+        }
+        writeToken(result);
+        this.writer.append(this.line).write("\n\n");
+        this.gameCount++;
+    }
+
+    public int getGameCount() {
+        return this.gameCount;
+    }
+
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    // The PGN result token for the winner a Game works out from its result.
+    public static String toResult(final String winner) {
+        switch (winner) {
+            case "White":
+                return "1-0";
+            case "Black":
+                return "0-1";
+            case "Tie":
+                return "1/2-1/2";
+            default:
+                return "*";
+        }
+    }
+
+    // A game set up from a FEN tag starts at the move number and side to move of that
+    // position, counted in plies from the start of a game.
+    private static int calculateFirstPly(final String fen) {
+        if(fen == null) {
+            return 0;
+        }
+        final String[] fields = fen.trim().split("\\s+");
+        final int fullmoveNumber = fields.length > 5 ? Math.max(1, Integer.parseInt(fields[5])) : 1;
+        return (fullmoveNumber - 1) * 2 + (fields.length > 1 && fields[1].equals("b") ? 1 : 0);
+    }
+
+    private void writeTag(final String tagKey,
+                          final String tagValue) throws IOException {
+        this.writer.write('[');
+        this.writer.write(tagKey);
+        this.writer.write(" \"");
+        for(int i = 0; i < tagValue.length(); i++) {
+            final char c = tagValue.charAt(i);
+            if(c == '"' || c == '\\') {
+                this.writer.write('\\');
+            }
+            this.writer.write(c);
+        }
+        this.writer.write("\"]\n");
+    }
+
+    // Adds a token to the current movetext line, starting a new line first when
+    // the token would not fit.
+    private void writeToken(final String token) throws IOException {
+        if(this.line.length() > 0) {
+            if(this.line.length() + 1 + token.length() > MAX_LINE_LENGTH) {
+                this.writer.append(this.line).write('\n');
+                this.line.setLength(0);
+            }
+            else {
+                this.line.append(' ');
+            }
+        }
+        this.line.append(token);
+    }
+
+}
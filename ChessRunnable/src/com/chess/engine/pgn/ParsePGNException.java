@@ -1,10 +0,0 @@
-package pgn;
-
-public class ParsePGNException
-        extends Exception {
-
-    public ParsePGNException(final String message) {
-        super(message);
-    }
-
-}
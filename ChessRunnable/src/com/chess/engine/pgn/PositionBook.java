@@ -0,0 +1,227 @@
+package pgn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import ally.Alliance;
+import board.Board;
+import board.Move;
+import board.Move.MoveFactory;
+import player.MoveTransition;
+import player.Player;
+
+/*
+ * 
+ *  PositionBook is an opening book keyed by position rather than by move order.
+ *  Every persisted game is played through from the start, and each move is
+ *  recorded under the Zobrist hash of the position it was played in, together
+ *  with how the game ended. Games that reach the same position by different
+ *  move orders add to the same statistics, so a transposition finds the book
+ *  just as well as the main line does.
+ * 
+ */
+
+public class PositionBook implements PGNPersistence {
+
+    // Openings rarely stay in theory longer than this, and replaying a game costs
+    // a board per ply, so only the start of each game goes into the book.
+    private static final int MAX_BOOK_PLY = 30;
+    // The normal quantile of a 95% confidence interval.
+    private static final double CONFIDENCE_Z = 1.96;
+
+    public enum Selection {
+        // Always the move with the best score for the side to move, judged by the
+        // lower bound of its Wilson interval so that a move won in one game does
+        // not outrank a main line that scored well over thousands.
+        BEST_SCORE,
+        // A random move, each chosen in proportion to the points it scored.
+        WEIGHTED
+    }
+
+    private final Map<Long, BookMove[]> positions;
+    private final Selection selection;
+    private final Random random;
+    private int gameCount;
+
+    public PositionBook() {
+        this(Selection.BEST_SCORE);
+    }
+
+    public PositionBook(final Selection selection) {
+        this.positions = new HashMap<>();
+        this.selection = selection;
+        this.random = new Random();
+    }
+
+    @Override
+    public void persistGame(final Game game) {
+        final String winner = game.getWinner();
+        Board board = Board.createStandardBoard();
+        int ply = 0;
+        for(final String moveText : game.getMoves()) {
+            if(ply++ == MAX_BOOK_PLY) {
+                break;
+            }
+            final Move move = PGNUtilities.createMove(board, moveText);
+            if(move == MoveFactory.getNullMove()) {
+                break;
+            }
+            final MoveTransition transition = board.currentPlayer().makeMove(move);
+            if(!transition.getMoveStatus().isDone()) {
+                break;
+            }
+            addMove(board.getZobristHash(), move, winner);
+            board = transition.getToBoard();
+        }
+        synchronized (this) {
+            this.gameCount++;
+        }
+    }
+
+    @Override
+    public Move getNextBestMove(final Board board,
+                                final Player player,
+                                final String gameText) {
+        final BookLookupEvent lookupEvent = new BookLookupEvent();
+        lookupEvent.begin();
+        final BookMove bookMove;
+        synchronized (this) {
+            final BookMove[] bookMoves = this.positions.get(board.getZobristHash());
+            bookMove = bookMoves == null ? null : select(bookMoves, player.getAlliance());
+        }
+        final Move move = bookMove == null ? MoveFactory.getNullMove() : findLegalMove(board, bookMove);
+        if(lookupEvent.shouldCommit()) {
+            lookupEvent.book = "Position";
+            lookupEvent.ply = gameText.trim().isEmpty() ? 0 : gameText.split(",").length;
+            lookupEvent.bookMove = move.toString();
+            lookupEvent.hits = bookMove == null ? 0 : bookMove.getGames();
+            lookupEvent.commit();
+        }
+        return move;
+    }
+
+    public synchronized int getGameCount() {
+        return this.gameCount;
+    }
+
+    public synchronized int getPositionCount() {
+        return this.positions.size();
+    }
+
+    private synchronized void addMove(final long positionHash, final Move move, final String winner) {
+        final int moveKey = moveKey(move.getCurrentCoordinate(), move.getDestinationCoordinate());
+        BookMove[] bookMoves = this.positions.get(positionHash);
+        if(bookMoves == null) {
+            bookMoves = new BookMove[0];
+        }
+        BookMove bookMove = null;
+        for(final BookMove candidate : bookMoves) {
+            if(candidate.moveKey == moveKey) {
+                bookMove = candidate;
+                break;
+            }
+        }
+        if(bookMove == null) {
+            bookMove = new BookMove(moveKey);
+            bookMoves = Arrays.copyOf(bookMoves, bookMoves.length + 1);
+            bookMoves[bookMoves.length - 1] = bookMove;
+            this.positions.put(positionHash, bookMoves);
+        }
+        bookMove.addResult(winner);
+    }
+
+    private BookMove select(final BookMove[] bookMoves, final Alliance alliance) {
+        if(this.selection == Selection.WEIGHTED) {
+            double total = 0;
+            for(final BookMove bookMove : bookMoves) {
+                total += bookMove.getPoints(alliance);
+            }
+            if(total > 0) {
+                double pick = this.random.nextDouble() * total;
+                for(final BookMove bookMove : bookMoves) {
+                    pick -= bookMove.getPoints(alliance);
+                    if(pick < 0) {
+                        return bookMove;
+                    }
+                }
+            }
+        }
+        BookMove best = null;
+        for(final BookMove bookMove : bookMoves) {
+            if(best == null || bookMove.getLowerScore(alliance) > best.getLowerScore(alliance) ||
+               (bookMove.getLowerScore(alliance) == best.getLowerScore(alliance) && bookMove.getGames() > best.getGames())) {
+                best = bookMove;
+            }
+        }
+        return best != null && best.getPoints(alliance) > 0 ? best : null;
+    }
+
+    private static Move findLegalMove(final Board board, final BookMove bookMove) {
+        for(final Move move : board.currentPlayer().getLegalMoves()) {
+            if(moveKey(move.getCurrentCoordinate(), move.getDestinationCoordinate()) == bookMove.moveKey &&
+               board.currentPlayer().makeMove(move).getMoveStatus().isDone()) {
+                return move;
+            }
+        }
+        return MoveFactory.getNullMove();
+    }
+
+    private static int moveKey(final int currentCoordinate, final int destinationCoordinate) {
+        return currentCoordinate * 64 + destinationCoordinate;
+    }
+
+
+    // A BookMove is one move played from a position and the results of the games that played it.
+    private static final class BookMove {
+
+        private final int moveKey;
+        private int whiteWins;
+        private int blackWins;
+        private int draws;
+
+        BookMove(final int moveKey) {
+            this.moveKey = moveKey;
+        }
+
+        void addResult(final String winner) {
+            if(winner.equals("White")) {
+                this.whiteWins++;
+            }
+            else if(winner.equals("Black")) {
+                this.blackWins++;
+            }
+            else if(winner.equals("Tie")) {
+                this.draws++;
+            }
+        }
+
+        int getGames() {
+            return this.whiteWins + this.blackWins + this.draws;
+        }
+
+        // A win counts one point and a draw half a point for the side that moved.
+        double getPoints(final Alliance alliance) {
+            return (alliance.isWhite() ? this.whiteWins : this.blackWins) + this.draws / 2.0;
+        }
+
+        double getScore(final Alliance alliance) {
+            return getGames() == 0 ? 0 : getPoints(alliance) / getGames();
+        }
+
+        // The lower end of the Wilson score interval: the score the move can be
+        // trusted to reach, which rises towards getScore as it is played more.
+        double getLowerScore(final Alliance alliance) {
+            final int games = getGames();
+            if(games == 0) {
+                return 0;
+            }
+            final double score = getScore(alliance);
+            final double z2 = CONFIDENCE_Z * CONFIDENCE_Z;
+            return (score + z2 / (2 * games) -
+                    CONFIDENCE_Z * Math.sqrt(score * (1 - score) / games + z2 / (4.0 * games * games))) / (1 + z2 / games);
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package pgn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import board.Board;
+import board.BoardUtils;
+import board.Move;
+import pieces.Piece;
+import player.Player;
+
+/*
+ *
+ *  SANUtilities writes moves in standard algebraic notation, the notation PGN
+ *  files use: the piece letter, the origin file or rank when another piece of
+ *  the same kind could reach the same square, x for a capture, the destination,
+ *  the promotion piece and + or # when the move gives check or mate. Text
+ *  written here reads back to the same move with PGNUtilities.createMove.
+ *
+ *  Check comes from the attacks the board already worked out for the side to
+ *  move. Only a move that gives check is tested for mate, trying the king's
+ *  own moves first, since those are the usual way out.
+ *
+ */
+
+public class SANUtilities {
+
+    private SANUtilities() {
+        throw new RuntimeException("Not Instantiable!");
+    }
+
+    // The move in SAN, played on the board it was created on.
+    public static String toSAN(final Move move) {
+        return toSAN(move, move.getBoard().currentPlayer().makeMove(move).getToBoard());
+    }
+
+    // The move in SAN, where toBoard is the position after the move. Passing it in
+    // saves playing the move again when the caller already has it.
+    public static String toSAN(final Move move,
+                               final Board toBoard) {
+        final StringBuilder builder = new StringBuilder();
+        if(move.isCastlingMove()) {
+            builder.append(move.getDestinationCoordinate() % BoardUtils.NUM_TILES_PER_ROW == 6 ? "O-O" : "O-O-O");
+        }
+        else {
+            final Piece.PieceType pieceType = move.getMovedPiece().getPieceType();
+            final String from = BoardUtils.getPositionAtCoordinate(move.getCurrentCoordinate());
+            if(pieceType.isPawn()) {
+                if(move.isAttack()) {
+                    builder.append(from.charAt(0));
+                }
+            }
+            else {
+                builder.append(pieceType.toString());
+                builder.append(calculateDisambiguation(move));
+            }
+            if(move.isAttack()) {
+                builder.append('x');
+            }
+            builder.append(BoardUtils.getPositionAtCoordinate(move.getDestinationCoordinate()));
+            if(move instanceof Move.PawnPromotion) {
+                builder.append("=Q");
+            }
+        }
+        return builder.append(calculateCheckAndCheckMateHash(toBoard)).toString();
+    }
+
+    // The SAN of every move of a game played from one position to the next. Each
+    // move's board is the position after the move before it, so only the last move
+    // has to be played to see whether it gives check.
+    public static List<String> toSAN(final List<Move> moves) {
+        final List<String> moveTexts = new ArrayList<>(moves.size());
+        for(int i = 0; i < moves.size(); i++) {
+            final Move move = moves.get(i);
+            moveTexts.add(i + 1 < moves.size() ? toSAN(move, moves.get(i + 1).getBoard()) : toSAN(move));
+        }
+        return moveTexts;
+    }
+
+    // The origin file, else the origin rank, else both, when another piece of the
+    // same kind can legally move to the same square.
+    private static String calculateDisambiguation(final Move move) {
+        final Board board = move.getBoard();
+        boolean isAmbiguous = false;
+        boolean sharesFile = false;
+        boolean sharesRank = false;
+        for(final Move other : board.currentPlayer().getLegalMoves()) {
+            if(other.getDestinationCoordinate() == move.getDestinationCoordinate() &&
+               other.getCurrentCoordinate() != move.getCurrentCoordinate() &&
+               other.getMovedPiece().getPieceType() == move.getMovedPiece().getPieceType() &&
+               !other.isCastlingMove() &&
+               board.currentPlayer().makeMove(other).getMoveStatus().isDone()) {
+                isAmbiguous = true;
+                sharesFile |= other.getCurrentCoordinate() % BoardUtils.NUM_TILES_PER_ROW ==
+                              move.getCurrentCoordinate() % BoardUtils.NUM_TILES_PER_ROW;
+                sharesRank |= other.getCurrentCoordinate() / BoardUtils.NUM_TILES_PER_ROW ==
+                              move.getCurrentCoordinate() / BoardUtils.NUM_TILES_PER_ROW;
+            }
+        }
+        if(!isAmbiguous) {
+            return "";
+        }
+        final String from = BoardUtils.getPositionAtCoordinate(move.getCurrentCoordinate());
+        if(!sharesFile) {
+            return from.substring(0, 1);
+        }
+        return sharesRank ? from : from.substring(1);
+    }
+
+    private static String calculateCheckAndCheckMateHash(final Board board) {
+        final Player player = board.currentPlayer();
+        if(!player.isInCheck()) {
+            return "";
+        }
+        return hasEscapeMove(player) ? "+" : "#";
+    }
+
+    private static boolean hasEscapeMove(final Player player) {
+        for(final Move move : player.getLegalMoves()) {
+            if(move.getMovedPiece().getPieceType().isKing() && player.makeMove(move).getMoveStatus().isDone()) {
+                return true;
+            }
+        }
+        for(final Move move : player.getLegalMoves()) {
+            if(!move.getMovedPiece().getPieceType().isKing() && player.makeMove(move).getMoveStatus().isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
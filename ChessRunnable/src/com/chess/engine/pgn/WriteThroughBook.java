@@ -0,0 +1,71 @@
+package pgn;
+
+import java.io.IOException;
+
+import board.Board;
+import board.Move;
+import player.Player;
+
+/*
+ *
+ *  WriteThroughBook answers book lookups from an in-memory book while keeping
+ *  the MySQL game table as the store of every game. The book is filled from the
+ *  table once, and each game persisted afterwards, such as the games of a PGN
+ *  file loaded in the GUI, goes to the table as well as to the book.
+ *
+ */
+
+public class WriteThroughBook implements ExportablePersistence {
+
+    private final PGNPersistence book;
+    private final MySqlGamePersistence gameStore;
+
+    public WriteThroughBook(final PGNPersistence book,
+                            final MySqlGamePersistence gameStore) {
+        this.book = book;
+        this.gameStore = gameStore;
+    }
+
+    // Reads every game of the table into the book. The book answers from the games
+    // read so far meanwhile.
+    public void loadBook() throws IOException {
+        this.gameStore.loadGames(this.book);
+    }
+
+    @Override
+    public void persistGame(final Game game) {
+        this.gameStore.persistGame(game);
+        this.book.persistGame(game);
+    }
+
+    @Override
+    public Move getNextBestMove(final Board board,
+                                final Player player,
+                                final String gameText) {
+        return this.book.getNextBestMove(board, player, gameText);
+    }
+
+    @Override
+    public void beginImport() {
+        this.gameStore.beginImport();
+        this.book.beginImport();
+    }
+
+    @Override
+    public void endImport() {
+        this.book.endImport();
+        this.gameStore.endImport();
+    }
+
+    @Override
+    public int getLostGameCount() {
+        return this.gameStore.getLostGameCount();
+    }
+
+    // The book only keeps statistics, the whole games come from the table.
+    @Override
+    public void exportGames(final PGNWriter writer) throws IOException {
+        this.gameStore.exportGames(writer);
+    }
+
+}
@@ -0,0 +1,448 @@
+package uci;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ai.MiniMax;
+import ai.MoveStrategy;
+import ai.SearchListener;
+import ai.SearchStatistics;
+import board.Board;
+import board.BoardUtils;
+import board.Move;
+import board.Move.MoveFactory;
+import board.PositionHistory;
+import pgn.FenUtilities;
+import pgn.PolyglotBook;
+import player.MoveTransition;
+
+/*
+ *
+ *  UciEngine is a console front end that speaks the Universal Chess Interface
+ *  protocol on standard input and output, so the engine can run on a server or
+ *  under a match manager without the Swing table. It only uses the ai, board
+ *  and pgn packages and never loads the gui classes or their sounds.
+ *
+ *  Run it with:  java -cp <classpath> uci.UciEngine
+ *
+ */
+
+public final class UciEngine {
+
+	private static final String ENGINE_NAME = "ChessEngineAI";
+	private static final String ENGINE_AUTHOR = "ejrcarr";
+	private static final String STARTPOS_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	private static final int DEFAULT_SEARCH_DEPTH = 4;
+	private static final int MAX_SEARCH_DEPTH = 64;
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+	private static final long MOVE_OVERHEAD_MILLIS = 50;
+	private static final int DEFAULT_HASH_MB = 16;
+	private static final int DEFAULT_THREADS = 1;
+
+	private final PrintStream out;
+	private final ScheduledExecutorService timer;
+	private Board board;
+	private PositionHistory positionHistory;
+	private int hashSizeMb;
+	private int threads;
+	private PolyglotBook book;
+	private MoveStrategy strategy;
+	private Thread searchThread;
+	private ScheduledFuture<?> stopTimer;
+	private volatile boolean infinite;
+	private volatile boolean stopReceived;
+
+	// CONSTRUCTOR
+	UciEngine(final PrintStream out) {
+		this.out = out;
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "UCI Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.board = Board.createStandardBoard();
+		this.positionHistory = new PositionHistory(this.board);
+		this.hashSizeMb = DEFAULT_HASH_MB;
+		this.threads = DEFAULT_THREADS;
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final UciEngine engine = new UciEngine(System.out);
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while((line = reader.readLine()) != null) {
+			// A command the engine cannot make sense of must not end the process, the
+			// GUI goes on sending commands and waits for their answers.
+			try {
+				if(!engine.handle(line.trim())) {
+					break;
+				}
+			}
+			catch(final RuntimeException e) {
+				engine.send("info string error in command " + line.trim() + ": " + e);
+			}
+		}
+		engine.stopSearch();
+		engine.waitForSearch();
+	}
+
+	// Handles one command line from the GUI and returns false once the engine should quit.
+	boolean handle(final String line) {
+		if(line.isEmpty()) {
+			return true;
+		}
+		final String[] tokens = line.split("\\s+");
+		switch(tokens[0]) {
+			case "uci":
+				send("id name " + ENGINE_NAME);
+				send("id author " + ENGINE_AUTHOR);
+				send("option name Hash type spin default " + DEFAULT_HASH_MB + " min 1 max 4096");
+				send("option name Threads type spin default " + DEFAULT_THREADS + " min 1 max 256");
+				send("option name BookFile type string default <empty>");
+				send("uciok");
+				break;
+			case "isready":
+				send("readyok");
+				break;
+			case "setoption":
+				setOption(tokens);
+				break;
+			case "ucinewgame":
+				stopSearch();
+				waitForSearch();
+				this.board = Board.createStandardBoard();
+				this.positionHistory = new PositionHistory(this.board);
+				break;
+			case "position":
+				waitForSearch();
+				setPosition(tokens);
+				break;
+			case "go":
+				waitForSearch();
+				go(tokens);
+				break;
+			case "stop":
+				this.stopReceived = true;
+				stopSearch();
+				break;
+			case "quit":
+				return false;
+			default:
+				send("info string unknown command " + tokens[0]);
+		}
+		return true;
+	}
+
+	// setoption name <id> [value <x>]
+	private void setOption(final String[] tokens) {
+		final String name = tokenAfter(tokens, "name");
+		final String value = tokenAfter(tokens, "value");
+		if(name == null || value == null) {
+			return;
+		}
+		try {
+			if(name.equalsIgnoreCase("Hash")) {
+				this.hashSizeMb = Integer.parseInt(value);
+				send("info string Hash set to " + this.hashSizeMb + " MB; the search does not use a hash table yet");
+			}
+			else if(name.equalsIgnoreCase("Threads")) {
+				this.threads = Integer.parseInt(value);
+				send("info string Threads set to " + this.threads + "; the search runs on a single thread");
+			}
+			else if(name.equalsIgnoreCase("BookFile")) {
+				setBook(value);
+			}
+		}
+		catch(final NumberFormatException e) {
+			send("info string invalid value " + value + " for option " + name);
+		}
+	}
+
+	// Opens a Polyglot book to play from, or plays without a book for <empty>.
+	private void setBook(final String path) {
+		this.book = null;
+		if(path.equals("<empty>")) {
+			return;
+		}
+		try {
+			this.book = new PolyglotBook(new File(path));
+			send("info string BookFile " + path + " opened with " + this.book.getEntryCount() + " entries");
+		}
+		catch(final IOException e) {
+			send("info string cannot open BookFile " + path + ": " + e.getMessage());
+		}
+	}
+
+	// position [fen <fenstring> | startpos] [moves <move1> ... <movei>]
+	private void setPosition(final String[] tokens) {
+		int index = 1;
+		Board position;
+		if(tokens.length > 1 && tokens[1].equals("fen")) {
+			final StringBuilder fen = new StringBuilder();
+			index = 2;
+			while(index < tokens.length && !tokens[index].equals("moves")) {
+				fen.append(tokens[index++]).append(' ');
+			}
+			try {
+				position = FenUtilities.createGameFromFEN(fen.toString());
+			}
+			catch(final RuntimeException e) {
+				send("info string invalid fen " + fen.toString().trim() + ", position unchanged");
+				return;
+			}
+		}
+		else {
+			position = FenUtilities.createGameFromFEN(STARTPOS_FEN);
+			index = 2;
+		}
+		final PositionHistory history = new PositionHistory(position);
+		if(index < tokens.length && tokens[index].equals("moves")) {
+			for(index++; index < tokens.length; index++) {
+				final Move move = parseMove(position, tokens[index]);
+				final MoveTransition transition = position.currentPlayer().makeMove(move);
+				if(!transition.getMoveStatus().isDone()) {
+					send("info string illegal move " + tokens[index]);
+					break;
+				}
+				position = transition.getToBoard();
+				history.push(position);
+			}
+		}
+		this.board = position;
+		this.positionHistory = history;
+	}
+
+	// go [depth <x>] [movetime <x>] [wtime <x>] [btime <x>] [winc <x>] [binc <x>] [movestogo <x>] [infinite]
+	private void go(final String[] tokens) {
+		int depth = -1;
+		long moveTime = -1;
+		long timeLeft = -1;
+		long increment = 0;
+		int movesToGo = DEFAULT_MOVES_TO_GO;
+		boolean infinite = false;
+		final boolean whiteToMove = this.board.currentPlayer().getAlliance().isWhite();
+
+		for(int i = 1; i < tokens.length; i++) {
+			switch(tokens[i]) {
+				case "depth":
+					depth = (int) Math.min(parseValue(tokens, ++i), MAX_SEARCH_DEPTH);
+					break;
+				case "movetime":
+					moveTime = parseValue(tokens, ++i);
+					break;
+				case "wtime":
+					final long whiteTime = parseValue(tokens, ++i);
+					timeLeft = whiteToMove ? whiteTime : timeLeft;
+					break;
+				case "btime":
+					final long blackTime = parseValue(tokens, ++i);
+					timeLeft = whiteToMove ? timeLeft : blackTime;
+					break;
+				case "winc":
+					final long whiteIncrement = Math.max(0, parseValue(tokens, ++i));
+					increment = whiteToMove ? whiteIncrement : increment;
+					break;
+				case "binc":
+					final long blackIncrement = Math.max(0, parseValue(tokens, ++i));
+					increment = whiteToMove ? increment : blackIncrement;
+					break;
+				case "movestogo":
+					final long movesLeft = parseValue(tokens, ++i);
+					movesToGo = movesLeft < 0 ? DEFAULT_MOVES_TO_GO : (int) Math.max(1, Math.min(movesLeft, Integer.MAX_VALUE));
+					break;
+				case "infinite":
+					infinite = true;
+					break;
+				default:
+					break;
+			}
+		}
+
+		// A book move is played at once, except when the GUI wants to analyse.
+		if(!infinite && this.book != null) {
+			final Move bookMove = this.book.getNextBestMove(this.board, this.board.currentPlayer(), "");
+			if(bookMove != MoveFactory.getNullMove()) {
+				send("info string book move");
+				send("bestmove " + toUci(bookMove));
+				return;
+			}
+		}
+		if(moveTime < 0 && timeLeft >= 0) {
+			moveTime = Math.max(1, Math.min(timeLeft - MOVE_OVERHEAD_MILLIS, timeLeft / movesToGo + increment / 2));
+		}
+		// Without a depth of its own, a search with a clock runs until it is stopped.
+		if(depth < 0) {
+			depth = infinite || moveTime >= 0 ? MAX_SEARCH_DEPTH : DEFAULT_SEARCH_DEPTH;
+		}
+		startSearch(this.board, this.positionHistory, depth, moveTime, infinite);
+	}
+
+	// The number following an option of go, or -1, which leaves the option unset,
+	// after telling the GUI that the number is missing or not a number.
+	private long parseValue(final String[] tokens, final int index) {
+		if(index >= tokens.length) {
+			send("info string missing value for " + tokens[index - 1]);
+			return -1;
+		}
+		try {
+			return Long.parseLong(tokens[index]);
+		}
+		catch(final NumberFormatException e) {
+			send("info string invalid value " + tokens[index] + " for " + tokens[index - 1]);
+			return -1;
+		}
+	}
+
+	private void startSearch(final Board position, final PositionHistory history,
+							 final int depth, final long moveTime, final boolean infinite) {
+		final MiniMax miniMax = new MiniMax(depth);
+		miniMax.setPositionHistory(history);
+		final boolean whiteToMove = position.currentPlayer().getAlliance().isWhite();
+		miniMax.addSearchListener(new SearchListener() {
+			private final long startNanos = System.nanoTime();
+			private long nodes;
+
+			// Iterations report their own nodes, UCI wants the totals of the search so far.
+			// Scores are from white's point of view, UCI wants the side to move's.
+			@Override
+			public void iterationCompleted(final SearchStatistics.Iteration iteration) {
+				this.nodes += iteration.getNodes();
+				final long millis = Math.max(1, (System.nanoTime() - this.startNanos) / 1_000_000);
+				final int score = whiteToMove ? iteration.getScore() : -iteration.getScore();
+				send("info depth " + iteration.getDepth() + " nodes " + this.nodes +
+					 " nps " + (this.nodes * 1000 / millis) + " time " + millis +
+					 " score cp " + score + " pv " + toUci(iteration.getBestMove()));
+			}
+
+			@Override
+			public void searchCompleted(final SearchStatistics statistics) {
+				send("info depth " + statistics.getSearchDepth() + " seldepth " + statistics.getMaxSelectiveDepth() +
+					 " nodes " + statistics.getNodes() + " nps " + statistics.getNodesPerSecond() +
+					 " time " + statistics.getElapsedMillis());
+			}
+		});
+		this.strategy = miniMax;
+		this.infinite = infinite;
+		this.stopReceived = false;
+		this.searchThread = new Thread(() -> {
+			final Move bestMove = miniMax.execute(position);
+			cancelStopTimer();
+			awaitStopIfInfinite();
+			final Move ponderMove = miniMax.getPonderMove();
+			send("bestmove " + toUci(bestMove) + (ponderMove != null ? " ponder " + toUci(ponderMove) : ""));
+		}, "UCI Search");
+		this.searchThread.start();
+		if(moveTime >= 0) {
+			synchronized(this) {
+				this.stopTimer = this.timer.schedule(this::stopSearch, moveTime, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	// In infinite mode the protocol only allows bestmove after the GUI sent stop.
+	private void awaitStopIfInfinite() {
+		synchronized(this) {
+			while(this.infinite && !this.stopReceived) {
+				try {
+					wait();
+				}
+				catch(final InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	// Stops the running search through both the strategy and an interrupt; the
+	// interrupt also covers a stop that arrives before the search has started.
+	private synchronized void stopSearch() {
+		cancelStopTimer();
+		if(this.strategy != null) {
+			this.strategy.stop();
+		}
+		if(this.searchThread != null) {
+			this.searchThread.interrupt();
+		}
+		notifyAll();
+	}
+
+	// A search that ends before its time is up must not leave its timer to stop the
+	// next one. The search thread cancels it as soon as it is done, and waitForSearch
+	// again for a timer that was only scheduled after that.
+	private synchronized void cancelStopTimer() {
+		if(this.stopTimer != null) {
+			this.stopTimer.cancel(false);
+			this.stopTimer = null;
+		}
+	}
+
+	private void waitForSearch() {
+		final Thread thread = this.searchThread;
+		if(thread == null) {
+			return;
+		}
+		if(this.infinite) {
+			this.stopReceived = true;
+			stopSearch();
+		}
+		try {
+			thread.join();
+		}
+		catch(final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		cancelStopTimer();
+		this.searchThread = null;
+		this.strategy = null;
+	}
+
+	// Turns long algebraic notation such as e2e4 or e7e8q into a legal move on the board.
+	static Move parseMove(final Board board, final String text) {
+		if(text.length() < 4) {
+			return MoveFactory.getNullMove();
+		}
+		final Integer from = BoardUtils.POSITION_TO_COORDINATE.get(text.substring(0, 2));
+		final Integer to = BoardUtils.POSITION_TO_COORDINATE.get(text.substring(2, 4));
+		if(from == null || to == null) {
+			return MoveFactory.getNullMove();
+		}
+		return MoveFactory.createMove(board, from, to);
+	}
+
+	static String toUci(final Move move) {
+		if(move == null || move == MoveFactory.getNullMove()) {
+			return "0000";
+		}
+		final String text = BoardUtils.getPositionAtCoordinate(move.getCurrentCoordinate()) +
+							BoardUtils.getPositionAtCoordinate(move.getDestinationCoordinate());
+		return move instanceof Move.PawnPromotion ? text + "q" : text;
+	}
+
+	private static String tokenAfter(final String[] tokens, final String key) {
+		for(int i = 0; i < tokens.length - 1; i++) {
+			if(tokens[i].equals(key)) {
+				final StringBuilder builder = new StringBuilder(tokens[i + 1]);
+				for(int j = i + 2; j < tokens.length && !tokens[j].equals("value"); j++) {
+					builder.append(' ').append(tokens[j]);
+				}
+				return builder.toString();
+			}
+		}
+		return null;
+	}
+
+	private void send(final String message) {
+		synchronized(this.out) {
+			this.out.println(message);
+			this.out.flush();
+		}
+	}
+
+}